@@ -1,11 +1,16 @@
 package org.processmining.implicitplaceidentification.algorithms;
 
+import com.google.common.collect.BiMap;
 import org.deckfour.xes.model.XEvent;
 import org.deckfour.xes.model.XLog;
 import org.deckfour.xes.model.XTrace;
 import org.deckfour.xes.model.impl.XLogImpl;
 import org.deckfour.xes.model.impl.XTraceImpl;
+import org.processmining.implicitplaceidentification.algorithms.util.IndexedPetrinet;
 import org.processmining.implicitplaceidentification.algorithms.util.PetriNetCopier;
+import org.processmining.implicitplaceidentification.algorithms.util.ReplayContext;
+import org.processmining.implicitplaceidentification.algorithms.util.TNets;
+import org.processmining.implicitplaceidentification.algorithms.util.VariantCache;
 import org.processmining.models.graphbased.AbstractGraphElement;
 import org.processmining.models.graphbased.directed.petrinet.Petrinet;
 import org.processmining.models.graphbased.directed.petrinet.PetrinetNode;
@@ -15,10 +20,7 @@ import org.processmining.models.graphbased.directed.petrinet.elements.Transition
 import org.processmining.models.semantics.petrinet.Marking;
 import org.processmining.plugins.petrinet.behavioralanalysis.woflan.WoflanDiagnosis;
 
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
+import java.util.*;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 
@@ -41,9 +43,14 @@ public class DecomposeAndConquerImplicitPlaceFinder {
     
     private final Petrinet petrinet;
     private final XLog log;
+    /**
+     * variants of the log, extracted once and shared by the replay-based finders of all subnets
+     */
+    private final VariantCache variants;
     private final Marking initialMarking;
 
     private final FindMode findMode;
+    private boolean parallel = false;
 
     public DecomposeAndConquerImplicitPlaceFinder(Petrinet petrinet, Marking initialMarking, XLog log, FindMode findMode) {
         //check if net is a sound WFN, if not, throw illegal argument exception
@@ -51,6 +58,23 @@ public class DecomposeAndConquerImplicitPlaceFinder {
         this.petrinet = petrinet;
         this.initialMarking = initialMarking;
         this.log = log;
+        // the variants are only used in memory, so the log does not have to be hashed
+        this.variants = VariantCache.fromLogWithoutHash(log);
+        this.findMode = findMode;
+    }
+
+    /**
+     * Creates a finder that uses the replay-based finder on variants that have already been extracted, e.g. read
+     * from an XES file with {@link org.processmining.implicitplaceidentification.algorithms.util.XesVariantReader}.
+     */
+    public DecomposeAndConquerImplicitPlaceFinder(Petrinet petrinet, Marking initialMarking, VariantCache variants,
+                                                  FindMode findMode) {
+        //check if net is a sound WFN, if not, throw illegal argument exception
+        checkOnSoundWFNness(petrinet);
+        this.petrinet = petrinet;
+        this.initialMarking = initialMarking;
+        this.log = null;
+        this.variants = variants;
         this.findMode = findMode;
     }
 
@@ -60,6 +84,7 @@ public class DecomposeAndConquerImplicitPlaceFinder {
         this.petrinet = petrinet;
         this.initialMarking = initialMarking;
         this.log = null;
+        this.variants = null;
         this.findMode = findMode;
     }
 
@@ -73,76 +98,47 @@ public class DecomposeAndConquerImplicitPlaceFinder {
     public Set<Place> findImplicitMinimalRegionsMaybeMore() {
         Set<Place> identifiedIPs = new HashSet<>();
 
-        Set<Place> placesAtChoices =
-                petrinet.getPlaces().stream().filter(p -> petrinet.getOutEdges(p).size() > 1).collect(Collectors.toSet());
+        // the t-nets of all transitions at choices are computed together
+        IndexedPetrinet indexedNet = new IndexedPetrinet(petrinet);
+        TNets tNetsAtChoices = new TNets(indexedNet);
+        List<ChoiceDecomposition> decompositions = Arrays.stream(tNetsAtChoices.getChoicePlaces())
+                .mapToObj(p -> decompose(indexedNet, tNetsAtChoices, p))
+                .collect(Collectors.toList());
+        // the log is replayed once on the whole net, the subnets only select the variants that fit them
+        ReplayContext replayContext = variants == null ? null : new ReplayContext(indexedNet,
+                indexedNet.toMarkingVector(initialMarking), variants);
 
-
-        for (Place placeAtChoice : placesAtChoices) {
-            System.out.println("[DEBUG] evaluating Tnets following place: " + placeAtChoice.getLabel());
-            Set<Transition> transitionsAtChoice =
-                    petrinet.getOutEdges(placeAtChoice).stream().map(e -> (Transition) e.getTarget()).collect(Collectors.toSet());
-
-            // compute t-nets at choice
-            HashMap<Transition, Set<PetrinetNode>> tNets = new HashMap<>();
-            for (Transition t : transitionsAtChoice) {
-                tNets.put(t, TNetDecomposition.getInducedTNetNodes(petrinet, t));
+        // the subproblems of all choices are independent, every t-net is checked on its own subnet
+        List<Map.Entry<ChoiceDecomposition, Transition>> subproblems = new ArrayList<>();
+        for (ChoiceDecomposition decomposition : decompositions) {
+            for (Transition t : decomposition.tNets.keySet()) {
+                subproblems.add(new AbstractMap.SimpleImmutableEntry<>(decomposition, t));
             }
+        }
+        List<Map<Place, Set<Place>>> implyingPlacesPerSubproblem = (parallel ? subproblems.parallelStream() :
+                subproblems.stream())
+                .map(subproblem -> replayContext == null ?
+                        findImplyingPlacesInTNet(subproblem.getKey(), subproblem.getValue()) :
+                        findImplyingPlacesInTNet(subproblem.getKey(), subproblem.getValue(), replayContext))
+                .collect(Collectors.toList());
 
+        int subproblem = 0;
+        for (ChoiceDecomposition decomposition : decompositions) {
             // compute implicit places for decomposed nets
             HashMap<Place, Set<Place>> implicitPlaceCandidates = new HashMap<>();
-            Set<Place> successorPlacesOfTnets = TNetDecomposition.getSuccessorPlacesOfSubnet(petrinet,
-                    tNets.values().stream().reduce(new HashSet<>(), (a, b) -> {
-                        a.addAll(b);
-                        return a;
-                    }));
-            for (Place sp : successorPlacesOfTnets) {
+            for (Place sp : decomposition.successorPlacesOfTnets) {
                 implicitPlaceCandidates.put(sp, new HashSet<>());
             }
 
-            // TODO use preprocessing to find duplicate places in decomposition
-            for (Transition t : transitionsAtChoice) {
-                System.out.println("[DEBUG] evaluating Tnet induced by transition: " + t.getLabel());
-                PetriNetCopier copier = new PetriNetCopier(petrinet);
-
-                // remove all but the current t-net from the copy
-                for (Transition key : tNets.keySet()) {
-                    if (!key.equals(t)) {
-                        copier.removeNodes(tNets.get(key));
-                    }
-                }
-                Petrinet subnet = copier.getDeepCopy();
-                Set<Place> successorPlacesOfTNetsAtChoiceInCopy = successorPlacesOfTnets.stream()
-                        .map(copier::getPlaceInCopyForOriginalPlace)
-                        .collect(Collectors.toSet());
-
-                for (Place sp : successorPlacesOfTNetsAtChoiceInCopy) {
-                    // check whether sp is implicit and get implying places
-                    Set<Place> implyingPlaces;
-                    if (log == null) {
-                        StructureBasedImplicitPlaceFinder ipFinder = new StructureBasedImplicitPlaceFinder(subnet,
-                                copier.originalToCopyMarking(initialMarking),
-                                FindMode.FIND_ALL_POTENTIAL_IPS);
-                        implyingPlaces = ipFinder.getPlacesImplyingP(sp);
-                    } else {
-                        // TODO filter log to only contain transitions that are in net? Not doing so might currently
-                        //  lead to a bug
-                        ReplayBasedImplicitPlaceFinder ipFinder = new ReplayBasedImplicitPlaceFinder(subnet,
-                                copier.originalToCopyMarking(initialMarking), log);
-                        implyingPlaces = ipFinder.getPlacesImplyingP(sp);
-                    }
-
-                    Place spInOriginalNet = copier.getPlaceInOriginalNetForPlaceInCopy(sp);
-
-                    if (implyingPlaces.isEmpty()) {
+            for (int i = 0; i < decomposition.tNets.size(); i++) {
+                Map<Place, Set<Place>> implyingPlacesInTNet = implyingPlacesPerSubproblem.get(subproblem++);
+                for (Map.Entry<Place, Set<Place>> entry : implyingPlacesInTNet.entrySet()) {
+                    Place spInOriginalNet = entry.getKey();
+                    if (entry.getValue().isEmpty()) {
                         implicitPlaceCandidates.remove(spInOriginalNet);
                     } else if (implicitPlaceCandidates.containsKey(spInOriginalNet)) {
                         // add implying places of sp to candidate map
-                        implicitPlaceCandidates.merge(spInOriginalNet,
-                                implyingPlaces.stream().map(copier::getPlaceInOriginalNetForPlaceInCopy).collect(Collectors.toSet()),
-                                (set, newValues) -> {
-                                    set.addAll(newValues);
-                                    return set;
-                                });
+                        implicitPlaceCandidates.get(spInOriginalNet).addAll(entry.getValue());
                     }
                 }
             }
@@ -182,6 +178,131 @@ public class DecomposeAndConquerImplicitPlaceFinder {
         return identifiedIPs;
     }
 
+    /**
+     * @param parallel whether to check the t-nets of all choices concurrently, false by default. The candidates of a
+     *                 choice are only combined once all of its t-nets have been checked.
+     */
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    private ChoiceDecomposition decompose(IndexedPetrinet indexedNet, TNets tNetsAtChoices, int placeAtChoice) {
+        BiMap<Place, Integer> placeToIndexMap = indexedNet.getPlaceToIndexMap();
+        BiMap<Transition, Integer> transitionToIndexMap = indexedNet.getTransitionToIndexMap();
+        System.out.println("[DEBUG] evaluating Tnets following place: " +
+                placeToIndexMap.inverse().get(placeAtChoice).getLabel());
+        int[] transitionsAtChoice = tNetsAtChoices.getTransitionsAtChoice(placeAtChoice);
+
+        // map the t-nets at the choice back to the nodes of the net
+        HashMap<Transition, Set<PetrinetNode>> tNets = new HashMap<>();
+        for (int t : transitionsAtChoice) {
+            Set<PetrinetNode> tNet = new HashSet<>();
+            tNetsAtChoices.getPlaces(t).stream().forEach(p -> tNet.add(placeToIndexMap.inverse().get(p)));
+            tNetsAtChoices.getTransitions(t).stream().forEach(u -> tNet.add(transitionToIndexMap.inverse().get(u)));
+            tNets.put(transitionToIndexMap.inverse().get(t), tNet);
+        }
+        Set<Place> successorPlacesOfTnets = tNetsAtChoices.getSuccessorPlaces(transitionsAtChoice).stream()
+                .mapToObj(p -> placeToIndexMap.inverse().get(p))
+                .collect(Collectors.toSet());
+        return new ChoiceDecomposition(tNets, successorPlacesOfTnets);
+    }
+
+    /**
+     * Checks the successor places of the t-nets at a choice on the net without all other t-nets at the choice with
+     * the structure-based finder.
+     *
+     * @return per successor place the places of the original net that imply it in the subnet, empty if it is not
+     * implicit in the subnet
+     */
+    private Map<Place, Set<Place>> findImplyingPlacesInTNet(ChoiceDecomposition decomposition, Transition t) {
+        System.out.println("[DEBUG] evaluating Tnet induced by transition: " + t.getLabel());
+        PetriNetCopier copier = new PetriNetCopier(petrinet);
+
+        // remove all but the current t-net from the copy
+        for (Transition key : decomposition.tNets.keySet()) {
+            if (!key.equals(t)) {
+                copier.removeNodes(decomposition.tNets.get(key));
+            }
+        }
+        Petrinet subnet = copier.getDeepCopy();
+        Set<Place> successorPlacesOfTNetsAtChoiceInCopy = decomposition.successorPlacesOfTnets.stream()
+                .map(copier::getPlaceInCopyForOriginalPlace)
+                .collect(Collectors.toSet());
+
+        // one finder checks all successor places, so the matrices of the subnet are only computed once
+        StructureBasedImplicitPlaceFinder ipFinder = new StructureBasedImplicitPlaceFinder(subnet,
+                copier.originalToCopyMarking(initialMarking),
+                FindMode.FIND_ALL_POTENTIAL_IPS);
+        Map<Place, Set<Place>> implyingPlacesInOriginalNet = new HashMap<>();
+        ipFinder.getPlacesImplyingEachOf(successorPlacesOfTNetsAtChoiceInCopy).forEach((sp, implyingPlaces) ->
+                implyingPlacesInOriginalNet.put(copier.getPlaceInOriginalNetForPlaceInCopy(sp),
+                        implyingPlaces.stream().map(copier::getPlaceInOriginalNetForPlaceInCopy)
+                                .collect(Collectors.toSet())));
+        return implyingPlacesInOriginalNet;
+    }
+
+    /**
+     * Checks the successor places of the t-nets at a choice on the net without all other t-nets at the choice with
+     * the marking histories of the variants that fit the subnet. The subnet is not copied, it only selects the rows
+     * and variants of the replay of the log on the whole net. Variants with activities of the other t-nets do not fit
+     * the subnet, so the log does not have to be filtered.
+     *
+     * @return per successor place the places of the original net that imply it in the subnet, empty if it is not
+     * implicit in the subnet
+     */
+    private Map<Place, Set<Place>> findImplyingPlacesInTNet(ChoiceDecomposition decomposition, Transition t,
+                                                            ReplayContext replayContext) {
+        System.out.println("[DEBUG] evaluating Tnet induced by transition: " + t.getLabel());
+        IndexedPetrinet indexedNet = replayContext.getNet();
+        BiMap<Place, Integer> placeToIndexMap = indexedNet.getPlaceToIndexMap();
+        BiMap<Transition, Integer> transitionToIndexMap = indexedNet.getTransitionToIndexMap();
+
+        // keep all but the other t-nets
+        BitSet places = new BitSet();
+        places.set(0, indexedNet.getNumberOfPlaces());
+        BitSet transitions = new BitSet();
+        transitions.set(0, indexedNet.getNumberOfTransitions());
+        for (Transition key : decomposition.tNets.keySet()) {
+            if (key.equals(t)) {
+                continue;
+            }
+            for (PetrinetNode node : decomposition.tNets.get(key)) {
+                if (node instanceof Place) {
+                    places.clear(placeToIndexMap.get(node));
+                } else {
+                    transitions.clear(transitionToIndexMap.get(node));
+                }
+            }
+        }
+        ReplayContext.Subnet subnet = replayContext.restrictTo(places, transitions);
+
+        Map<Place, Set<Place>> implyingPlacesInOriginalNet = new HashMap<>();
+        for (Place sp : decomposition.successorPlacesOfTnets) {
+            // check whether sp is implicit and get implying places
+            Set<Place> implyingPlaces = subnet.getPlacesImplying(placeToIndexMap.get(sp)).stream()
+                    .mapToObj(p -> placeToIndexMap.inverse().get(p))
+                    .collect(Collectors.toSet());
+            if (!implyingPlaces.isEmpty()) {
+                System.out.println("Place " + sp.getLabel() + " is implicit");
+            }
+            implyingPlacesInOriginalNet.put(sp, implyingPlaces);
+        }
+        return implyingPlacesInOriginalNet;
+    }
+
+    /**
+     * the t-nets induced by the transitions at a choice and the successor places of all of them
+     */
+    private static class ChoiceDecomposition {
+        private final Map<Transition, Set<PetrinetNode>> tNets;
+        private final Set<Place> successorPlacesOfTnets;
+
+        private ChoiceDecomposition(Map<Transition, Set<PetrinetNode>> tNets, Set<Place> successorPlacesOfTnets) {
+            this.tNets = tNets;
+            this.successorPlacesOfTnets = successorPlacesOfTnets;
+        }
+    }
+
     // TODO: Ist das Kunst oder kann das weg?
     private static Set<Place> findIPsUsingStructureBasedFinder(Petrinet subnet, Marking initialMarkingOnSubnet) {
         Set<Place> resultOnCopy;
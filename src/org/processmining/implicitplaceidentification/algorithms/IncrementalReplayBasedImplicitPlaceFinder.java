@@ -0,0 +1,305 @@
+package org.processmining.implicitplaceidentification.algorithms;
+
+import com.google.common.collect.BiMap;
+import com.google.common.collect.HashBiMap;
+import org.deckfour.xes.model.XLog;
+import org.processmining.implicitplaceidentification.algorithms.util.IndexedPetrinet;
+import org.processmining.models.graphbased.directed.petrinet.Petrinet;
+import org.processmining.models.graphbased.directed.petrinet.elements.Place;
+import org.processmining.models.graphbased.directed.petrinet.elements.Transition;
+import org.processmining.models.semantics.petrinet.Marking;
+
+import java.util.*;
+
+/**
+ * This class checks places for implicitness with the same replay-based criterion as
+ * {@link ReplayBasedImplicitPlaceFinder} (p1 = p2 + p3 on the marking histories), but one place at a time.
+ * It is meant to be used inside a discovery loop (e.g. the eST-Miner), where candidate places are generated one
+ * after another: the variants of the log are replayed once, the marking histories of the admitted places are kept,
+ * and for a new place only its own history is computed. The new place is then compared with the existing places in
+ * both directions, so each check takes O(places x events) instead of rebuilding a finder for the whole net.
+ * <p>
+ * Places are identified by ids. The places of the net given on construction keep their indices, admitted places
+ * get the next free id.
+ */
+public class IncrementalReplayBasedImplicitPlaceFinder {
+    private final BiMap<Place, Integer> placeToIdMap;
+    private final BiMap<Transition, Integer> transitionToIndexMap;
+    /**
+     * replayed variants that fit the net as sequences of transition indices
+     */
+    private final List<int[]> variants = new ArrayList<>();
+    /**
+     * number of replayed markings, i.e. the sum of the variant lengths plus one initial marking per variant
+     */
+    private final int numberOfColumns;
+    /**
+     * marking history per place id, null if the place has been removed
+     */
+    private final List<History> placeHistories = new ArrayList<>();
+    /**
+     * ids of the current places by their marking history, used to look up p3 = p1 - p2 in constant time
+     */
+    private final HashMap<History, Set<Integer>> placesByHistory = new HashMap<>();
+
+    /**
+     * Replays the log on the net and stores the marking histories of the places of the net. The net can be a net
+     * without any places, e.g. the initial net of a miner.
+     *
+     * @param petrinet       the Petri net, uniquely labeled and without silent transitions
+     * @param initialMarking the initial marking of the net
+     * @param log            the event log
+     */
+    public IncrementalReplayBasedImplicitPlaceFinder(Petrinet petrinet, Marking initialMarking, XLog log) {
+        IndexedPetrinet indexedNet = new IndexedPetrinet(petrinet);
+        transitionToIndexMap = indexedNet.getTransitionToIndexMap();
+        placeToIdMap = HashBiMap.create(indexedNet.getPlaceToIndexMap());
+
+        HashMap<String, Transition> transitionLabelsToTransitionMap = new HashMap<>();
+        petrinet.getTransitions().forEach(t -> transitionLabelsToTransitionMap.put(t.getLabel(), t));
+        HashSet<ArrayList<Transition>> transitionSequences =
+                ReplayBasedImplicitPlaceFinder.mapTracesToTransitionSequences(
+                        ReplayBasedImplicitPlaceFinder.extractVariantsFromLog(log), transitionLabelsToTransitionMap);
+
+        // first pass: find the fitting variants and the number of markings
+        int[] m0 = indexedNet.toMarkingVector(initialMarking);
+        int columns = 0;
+        for (ArrayList<Transition> trace : transitionSequences) {
+            int[] variant = trace.stream().mapToInt(transitionToIndexMap::get).toArray();
+            int[] mx = m0.clone();
+            boolean fits = true;
+            for (int t : variant) {
+                if (!indexedNet.isEnabled(mx, t)) {
+                    fits = false;
+                    break;
+                }
+                indexedNet.fire(mx, t);
+            }
+            if (fits) {
+                variants.add(variant);
+                columns += variant.length + 1;
+            } else {
+                System.out.println("Variant does not match Petri net: " + trace);
+            }
+        }
+        numberOfColumns = columns;
+
+        // second pass: write the markings directly into the place histories
+        int[][] histories = new int[indexedNet.getNumberOfPlaces()][numberOfColumns];
+        int column = 0;
+        for (int[] variant : variants) {
+            int[] mx = m0.clone();
+            for (int p = 0; p < mx.length; p++) {
+                histories[p][column] = mx[p];
+            }
+            for (int t : variant) {
+                indexedNet.fire(mx, t);
+                column++;
+                for (int p = 0; p < mx.length; p++) {
+                    histories[p][column] = mx[p];
+                }
+            }
+            column++;
+        }
+        for (int[] history : histories) {
+            addPlace(new History(history));
+        }
+    }
+
+    /**
+     * Checks a new place given by its arc weights and admits it if it fits the log and is not implicit.
+     *
+     * @param pre           the weight of the arc from the place to every transition (indexed like
+     *                      {@link #getTransitionToIndexMap()}), 0 if there is no arc
+     * @param post          the weight of the arc from every transition to the place, 0 if there is no arc
+     * @param initialTokens the number of tokens in the place in the initial marking
+     * @return the outcome of the check, including the existing places that the new place makes implicit
+     */
+    public Admission admit(int[] pre, int[] post, int initialTokens) {
+        History history = computeHistory(pre, post, initialTokens);
+        if (history == null) {
+            return new Admission(-1, false, Collections.emptySet(), Collections.emptySet());
+        }
+
+        // is the new place implied by existing ones?
+        Set<Integer> implyingPlaces = new HashSet<>();
+        // does the new place make existing places implicit?
+        Set<Integer> placesMadeImplicit = new HashSet<>();
+        for (int p = 0; p < placeHistories.size(); p++) {
+            History other = placeHistories.get(p);
+            if (other == null) {
+                continue;
+            }
+            if (history.isGreaterOrEqualTo(other)) {
+                Set<Integer> p3s = placesByHistory.get(history.minus(other));
+                if (p3s != null && !(p3s.size() == 1 && p3s.contains(p))) {
+                    implyingPlaces.add(p);
+                }
+            }
+            if (other.isGreaterOrEqualTo(history)) {
+                Set<Integer> p3s = placesByHistory.get(other.minus(history));
+                if (p3s != null && !(p3s.size() == 1 && p3s.contains(p))) {
+                    placesMadeImplicit.add(p);
+                }
+            }
+        }
+
+        int id = -1;
+        if (implyingPlaces.isEmpty()) {
+            id = addPlace(history);
+        }
+        return new Admission(id, true, implyingPlaces, placesMadeImplicit);
+    }
+
+    /**
+     * Removes a place, e.g. after {@link #admit(int[], int[], int)} reported that a new place makes it implicit.
+     * Its marking history is released and later checks ignore it.
+     *
+     * @param id the id of the place
+     */
+    public void removePlace(int id) {
+        History history = placeHistories.get(id);
+        if (history == null) {
+            return;
+        }
+        placeHistories.set(id, null);
+        Set<Integer> places = placesByHistory.get(history);
+        places.remove(id);
+        if (places.isEmpty()) {
+            placesByHistory.remove(history);
+        }
+    }
+
+    /**
+     * @param id the id of a place
+     * @return the place of the net given on construction, or null if the place has been admitted later on
+     */
+    public Place getPlace(int id) {
+        return placeToIdMap.inverse().get(id);
+    }
+
+    public BiMap<Transition, Integer> getTransitionToIndexMap() {
+        return transitionToIndexMap;
+    }
+
+    private int addPlace(History history) {
+        int id = placeHistories.size();
+        placeHistories.add(history);
+        placesByHistory.computeIfAbsent(history, h -> new HashSet<>()).add(id);
+        return id;
+    }
+
+    /**
+     * Replays all variants on the new place only.
+     *
+     * @return the marking history of the place, or null if the place does not fit all variants
+     */
+    private History computeHistory(int[] pre, int[] post, int initialTokens) {
+        int[] history = new int[numberOfColumns];
+        int column = 0;
+        for (int[] variant : variants) {
+            int tokens = initialTokens;
+            history[column++] = tokens;
+            for (int t : variant) {
+                if (tokens < pre[t]) {
+                    return null;
+                }
+                tokens += post[t] - pre[t];
+                history[column++] = tokens;
+            }
+        }
+        return new History(history);
+    }
+
+    /**
+     * The marking history of a place across all replayed variants. Equal histories are equal keys.
+     */
+    private static final class History {
+        private final int[] values;
+        private final int hash;
+
+        History(int[] values) {
+            this.values = values;
+            this.hash = Arrays.hashCode(values);
+        }
+
+        boolean isGreaterOrEqualTo(History other) {
+            for (int i = 0; i < values.length; i++) {
+                if (values[i] < other.values[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        History minus(History other) {
+            int[] difference = new int[values.length];
+            for (int i = 0; i < values.length; i++) {
+                difference[i] = values[i] - other.values[i];
+            }
+            return new History(difference);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof History && hash == ((History) o).hash && Arrays.equals(values, ((History) o).values);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * Outcome of {@link #admit(int[], int[], int)}.
+     */
+    public static class Admission {
+        private final int id;
+        private final boolean fitting;
+        private final Set<Integer> implyingPlaces;
+        private final Set<Integer> placesMadeImplicit;
+
+        Admission(int id, boolean fitting, Set<Integer> implyingPlaces, Set<Integer> placesMadeImplicit) {
+            this.id = id;
+            this.fitting = fitting;
+            this.implyingPlaces = implyingPlaces;
+            this.placesMadeImplicit = placesMadeImplicit;
+        }
+
+        /**
+         * @return the id of the new place, or -1 if it has not been admitted
+         */
+        public int getId() {
+            return id;
+        }
+
+        /**
+         * @return false if the place cannot replay all variants. Such places are not admitted.
+         */
+        public boolean isFitting() {
+            return fitting;
+        }
+
+        /**
+         * @return true if the new place is implied by existing places and has therefore not been admitted
+         */
+        public boolean isImplicit() {
+            return !implyingPlaces.isEmpty();
+        }
+
+        /**
+         * @return ids of the existing places p2 for which a place p3 with new place = p2 + p3 exists
+         */
+        public Set<Integer> getImplyingPlaces() {
+            return implyingPlaces;
+        }
+
+        /**
+         * @return ids of the existing places p1 for which a place p3 with p1 = new place + p3 exists
+         */
+        public Set<Integer> getPlacesMadeImplicit() {
+            return placesMadeImplicit;
+        }
+    }
+}
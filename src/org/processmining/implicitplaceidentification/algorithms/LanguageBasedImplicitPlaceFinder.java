@@ -1,5 +1,8 @@
 package org.processmining.implicitplaceidentification.algorithms;
 
+import org.processmining.implicitplaceidentification.algorithms.util.ExplorationBudget;
+import org.processmining.implicitplaceidentification.algorithms.util.IndexedPetrinet;
+import org.processmining.implicitplaceidentification.algorithms.util.LanguageAutomaton;
 import org.processmining.implicitplaceidentification.algorithms.util.PetriNetCopier;
 import org.processmining.models.graphbased.AbstractGraphEdge;
 import org.processmining.models.graphbased.directed.petrinet.Petrinet;
@@ -10,7 +13,10 @@ import org.processmining.models.semantics.petrinet.Marking;
 import org.processmining.plugins.petrinet.behavioralanalysis.woflan.WoflanDiagnosis;
 
 import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * This class identifies implicit places in a petri net by generating the language of the net (as well as possible)
@@ -20,11 +26,24 @@ public class LanguageBasedImplicitPlaceFinder {
     private final Petrinet petrinet;
     private final Marking initialMarking;
     private final Place sinkPlace;
-    private final int maxTraceLength = 100;
-    private final int loopExecutionLimit = 2;
-    private final int markingBound = 5;
+    private int maxTraceLength = 100;
+    private int loopExecutionLimit = 2;
+    private int markingBound = 5;
+    private long timeBudgetMillis = Long.MAX_VALUE;
+    private long memoryBudgetBytes = Long.MAX_VALUE;
+    private static final int MAX_PRINTED_TRACES = 10;
+    /**
+     * the maximum trace length of the first round of {@link #findAnytime(Consumer)}
+     */
+    private static final int INITIAL_ANYTIME_TRACE_LENGTH = 8;
     PetriNetCopier petriNetCopier;
     Set<PetrinetNode> nonImplicitPlaces = new HashSet<>();
+    private LanguageComparisonMode comparisonMode = LanguageComparisonMode.FULL_LANGUAGE;
+    private boolean parallel = false;
+    /**
+     * firing sequences that prove that a place is not implicit, only filled in the lockstep modes
+     */
+    private final Map<Place, List<String>> witnessTraces = new HashMap<>();
 
     public LanguageBasedImplicitPlaceFinder(Petrinet petrinet, Marking initialMarking) {
         //check if net is a sound WFN, if not, throw illegal argument exception
@@ -48,53 +67,353 @@ public class LanguageBasedImplicitPlaceFinder {
      * @return a/the set of IPs depending on the set parameter
      */
     public Set<Place> find(boolean simulatedRemovalFlag) {
+        witnessTraces.clear();
+        PetrinetLanguageGenerator generator = new PetrinetLanguageGenerator();
+        IndexedPetrinet indexedNet = new IndexedPetrinet(petrinet);
+        int[] m0 = indexedNet.toMarkingVector(initialMarking);
+        LanguageAutomaton baseLanguage = comparisonMode == LanguageComparisonMode.FULL_LANGUAGE
+                ? generator.generateAutomaton(indexedNet, m0, maxTraceLength, loopExecutionLimit, markingBound)
+                : null;
+
+        List<Place> candidates = findCandidates();
+
         HashSet<Place> implicitPlaces = new HashSet<>();
+        if (simulatedRemovalFlag) {
+            // every check depends on the places removed before, so the places are checked one after another
+            BitSet removedPlaces = new BitSet();
+            for (Place p : candidates) {
+                int place = indexedNet.getPlaceToIndexMap().get(p);
+                PlaceCheck check = checkPlace(generator, indexedNet.withoutPlaces(removedPlaces), m0, place,
+                        baseLanguage, maxTraceLength);
+                report(p, check, implicitPlaces);
+                if (check.implicit) {
+                    removedPlaces.set(place);
+                    petrinet.removePlace(p);
+                    initialMarking.remove(p);
+                }
+            }
+        } else {
+            // the checks only read the shared net and base language, so they can run concurrently
+            Stream<Place> places = parallel ? candidates.parallelStream() : candidates.stream();
+            List<PlaceCheck> checks = places
+                    .map(p -> checkPlace(generator, indexedNet, m0, indexedNet.getPlaceToIndexMap().get(p),
+                            baseLanguage, maxTraceLength))
+                    .collect(Collectors.toList());
+            for (int i = 0; i < candidates.size(); i++) {
+                report(candidates.get(i), checks.get(i), implicitPlaces);
+            }
+        }
+        return implicitPlaces;
+    }
 
-        Set<Stack<String>> baseLanguage = new PetrinetLanguageGenerator().generate(petrinet, initialMarking,
-                maxTraceLength, loopExecutionLimit, markingBound);
+    /**
+     * Finds IPs like {@link #find(boolean)} without simulated removal, but deepens the exploration iteratively within
+     * the time and memory budget. The maximum trace length starts small and is doubled after every round up to the
+     * configured maximum, and only places that are still implicit are checked again. Every result is passed to the
+     * listener as soon as it is available and states the bounds it holds for, so a place can be reported as implicit
+     * for increasing trace lengths until it turns out not to be implicit or the budget is exhausted. The listener is
+     * never called concurrently, but possibly from different threads.
+     *
+     * @param listener receives the results
+     * @return the latest result of every place that has been checked at least once
+     */
+    public Map<Place, BoundedResult> findAnytime(Consumer<BoundedResult> listener) {
+        ExplorationBudget budget = new ExplorationBudget(timeBudgetMillis, memoryBudgetBytes);
+        PetrinetLanguageGenerator generator = new PetrinetLanguageGenerator(budget);
+        IndexedPetrinet indexedNet = new IndexedPetrinet(petrinet);
+        int[] m0 = indexedNet.toMarkingVector(initialMarking);
+        Map<Place, BoundedResult> results = new LinkedHashMap<>();
+
+        List<Place> undecided = findCandidates();
+        int length = Math.min(INITIAL_ANYTIME_TRACE_LENGTH, maxTraceLength);
+        while (!undecided.isEmpty() && !budget.isExceeded()) {
+            int roundLength = length;
+            LanguageAutomaton baseLanguage;
+            try {
+                baseLanguage = comparisonMode == LanguageComparisonMode.FULL_LANGUAGE
+                        ? generator.generateAutomaton(indexedNet, m0, roundLength, loopExecutionLimit, markingBound)
+                        : null;
+            } catch (CancellationException e) {
+                break;
+            }
+
+            Stream<Place> places = parallel ? undecided.parallelStream() : undecided.stream();
+            places.forEach(p -> {
+                PlaceCheck check;
+                try {
+                    check = checkPlace(generator, indexedNet, m0, indexedNet.getPlaceToIndexMap().get(p),
+                            baseLanguage, roundLength);
+                } catch (CancellationException e) {
+                    return;
+                }
+                // only a witness trace is a firing sequence that does not depend on the bounds
+                BoundedResult result = new BoundedResult(petriNetCopier.getPlaceInOriginalNetForPlaceInCopy(p),
+                        check.implicit, check.implicit || check.witnessTrace == null, roundLength,
+                        loopExecutionLimit, markingBound, check.witnessTrace);
+                synchronized (results) {
+                    results.put(result.getPlace(), result);
+                    System.out.println(result);
+                    listener.accept(result);
+                }
+            });
 
-        List<Place> petrinetPlaces = new ArrayList<>(petrinet.getPlaces());
+            if (roundLength == maxTraceLength) {
+                break;
+            }
+            undecided = undecided.stream().filter(p -> {
+                BoundedResult result = results.get(petriNetCopier.getPlaceInOriginalNetForPlaceInCopy(p));
+                return result != null && result.isImplicit();
+            }).collect(Collectors.toList());
+            length = (int) Math.min(2L * length, maxTraceLength);
+        }
+        return results;
+    }
 
-        for (Place p : petrinetPlaces) {
+    /**
+     * @return the places that are not excluded up front because of the structure of the net
+     */
+    private List<Place> findCandidates() {
+        List<Place> candidates = new ArrayList<>();
+        for (Place p : new ArrayList<>(petrinet.getPlaces())) {
             if (isPlaceTheOnlyInputForOneTransition(p) || p.equals(sinkPlace) || nonImplicitPlaces.contains(petriNetCopier.getPlaceInOriginalNetForPlaceInCopy(p))) {
                 System.out.println("Place " + p.getLabel() + " is not implicit because it is a sink place or the only" +
                         " input for a transition");
                 continue;
             }
-            System.out.println("Generating language for net without place " + p.getLabel());
-            PetriNetCopier pCopier = new PetriNetCopier(petrinet);
-            Petrinet copy = pCopier.getDeepCopy();
-            copy.removePlace(pCopier.getPlaceInCopyForOriginalPlace(p));
-            Set<Stack<String>> languageWithoutP;
-            try {
-                languageWithoutP = new PetrinetLanguageGenerator().generate(copy,
-                        pCopier.originalToCopyMarking(initialMarking), maxTraceLength, loopExecutionLimit,
-                        markingBound);
-            } catch (IllegalArgumentException e) {
-                continue;
+            candidates.add(p);
+        }
+        return candidates;
+    }
+
+    /**
+     * Compares the behavior of the net with and without a place according to the comparison mode. The place is
+     * removed by a view on the net, see {@link IndexedPetrinet#withoutPlace(int)}.
+     *
+     * @param generator      the generator, which may have a budget
+     * @param net            the net, possibly without places that have been removed before
+     * @param m0             the initial marking vector
+     * @param place          index of the place
+     * @param baseLanguage   the language of the net, only needed in {@link LanguageComparisonMode#FULL_LANGUAGE}
+     * @param maxTraceLength the maximum trace length that is explored
+     * @return the result of the check
+     */
+    private PlaceCheck checkPlace(PetrinetLanguageGenerator generator, IndexedPetrinet net, int[] m0, int place,
+                                  LanguageAutomaton baseLanguage, int maxTraceLength) {
+        if (comparisonMode == LanguageComparisonMode.FULL_LANGUAGE) {
+            LanguageAutomaton languageWithoutP = generator.generateAutomaton(net.withoutPlace(place), m0,
+                    maxTraceLength, loopExecutionLimit, markingBound);
+            if (baseLanguage.isEquivalentTo(languageWithoutP)) {
+                return new PlaceCheck(true, null, null);
             }
+            List<List<String>> baseLanguageWithoutNewLanguage =
+                    baseLanguage.getWordsNotIn(languageWithoutP, MAX_PRINTED_TRACES);
+            List<List<String>> newLanguageWithoutBase =
+                    languageWithoutP.getWordsNotIn(baseLanguage, MAX_PRINTED_TRACES);
+            return new PlaceCheck(false, "removing it would change the language with the following traces (at most "
+                    + MAX_PRINTED_TRACES + " each):\n" + baseLanguageWithoutNewLanguage + "\nand\n"
+                    + newLanguageWithoutBase, null);
+        }
 
-            if (baseLanguage.equals(languageWithoutP)) {
-                implicitPlaces.add(petriNetCopier.getPlaceInOriginalNetForPlaceInCopy(p));
-                System.out.println("Place " + p.getLabel() + " is implicit");
+        // the lockstep modes, independent transitions are only fired in one order with partial-order reduction
+        int[] witness = comparisonMode == LanguageComparisonMode.LOCKSTEP_WITH_PARTIAL_ORDER_REDUCTION
+                ? generator.findDivergingTraceWithPartialOrderReduction(net, m0, place, maxTraceLength, markingBound)
+                : generator.findDivergingTrace(net, m0, place, maxTraceLength, loopExecutionLimit, markingBound);
+        if (witness == null) {
+            return new PlaceCheck(true, null, null);
+        }
+        List<String> witnessTrace = new ArrayList<>(witness.length);
+        for (int t : witness) {
+            witnessTrace.add(net.getTransitionToIndexMap().inverse().get(t).getLabel());
+        }
+        return new PlaceCheck(false, "removing it would enable the trace " + witnessTrace, witnessTrace);
+    }
 
-                if (simulatedRemovalFlag) {
-                    petrinet.removePlace(p);
-                    initialMarking.remove(p);
-                }
-            } else {
-                Set<Stack<String>> baseLanguageWithoutNewLanguage = new HashSet<>(baseLanguage);
-                baseLanguageWithoutNewLanguage.removeAll(languageWithoutP);
-                Set<Stack<String>> newLanguageWithoutBase = new HashSet<>(languageWithoutP);
-                newLanguageWithoutBase.removeAll(baseLanguage);
-                System.out.println("Place " + p.getLabel() + " is not implicit because removing it would change the " +
-                        "language with the following traces:");
-                System.out.println(baseLanguageWithoutNewLanguage);
-                System.out.println("and");
-                System.out.println(newLanguageWithoutBase);
+    private void report(Place p, PlaceCheck check, Set<Place> implicitPlaces) {
+        Place original = petriNetCopier.getPlaceInOriginalNetForPlaceInCopy(p);
+        if (check.implicit) {
+            implicitPlaces.add(original);
+            System.out.println("Place " + p.getLabel() + " is implicit");
+        } else {
+            if (check.witnessTrace != null) {
+                witnessTraces.put(original, check.witnessTrace);
             }
+            System.out.println("Place " + p.getLabel() + " is not implicit because " + check.reason);
+        }
+    }
+
+    /**
+     * @param parallel whether to check the places concurrently, false by default. Only used if places are not
+     *                 removed during the search. In {@link LanguageComparisonMode#FULL_LANGUAGE}, every concurrent
+     *                 check holds the language automaton of its own net.
+     */
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    /**
+     * @param maxTraceLength the maximum trace length that is explored, 100 by default
+     */
+    public void setMaxTraceLength(int maxTraceLength) {
+        if (maxTraceLength < 1) {
+            throw new IllegalArgumentException("The maximum trace length must be positive");
+        }
+        this.maxTraceLength = maxTraceLength;
+    }
+
+    /**
+     * @param loopExecutionLimit how often a transition may fire in the same marking during the generation of one
+     *                           trace, 2 by default. Not used with partial-order reduction.
+     */
+    public void setLoopExecutionLimit(int loopExecutionLimit) {
+        if (loopExecutionLimit < 1) {
+            throw new IllegalArgumentException("The loop execution limit must be positive");
+        }
+        this.loopExecutionLimit = loopExecutionLimit;
+    }
+
+    /**
+     * @param markingBound the bound of the number of tokens per place, 5 by default
+     */
+    public void setMarkingBound(int markingBound) {
+        if (markingBound < 1) {
+            throw new IllegalArgumentException("The marking bound must be positive");
+        }
+        this.markingBound = markingBound;
+    }
+
+    /**
+     * @param timeBudgetMillis the time budget of {@link #findAnytime(Consumer)} in milliseconds, unlimited by default
+     */
+    public void setTimeBudget(long timeBudgetMillis) {
+        if (timeBudgetMillis < 0) {
+            throw new IllegalArgumentException("The time budget must not be negative");
+        }
+        this.timeBudgetMillis = timeBudgetMillis;
+    }
+
+    /**
+     * @param memoryBudgetBytes the maximum heap in use during {@link #findAnytime(Consumer)} in bytes, unlimited by
+     *                          default
+     */
+    public void setMemoryBudget(long memoryBudgetBytes) {
+        if (memoryBudgetBytes < 0) {
+            throw new IllegalArgumentException("The memory budget must not be negative");
+        }
+        this.memoryBudgetBytes = memoryBudgetBytes;
+    }
+
+    /**
+     * @param comparisonMode how the behavior of the net with and without a place is compared
+     */
+    public void setComparisonMode(LanguageComparisonMode comparisonMode) {
+        this.comparisonMode = comparisonMode;
+    }
+
+    /**
+     * @param place a place of the original net
+     * @return a trace that is only possible without the place, or null if none has been found by the last call of
+     * {@link #find(boolean)} in one of the lockstep modes
+     */
+    public List<String> getWitnessTrace(Place place) {
+        return witnessTraces.get(place);
+    }
+
+    /**
+     * The result of checking a place with bounded exploration. A place that is implicit has only been shown to be
+     * implicit within the bounds. A place that is not implicit in one of the lockstep modes comes with a witness
+     * trace, a firing sequence of the net without the place that the net does not allow, so this also holds for
+     * larger bounds. In {@link LanguageComparisonMode#FULL_LANGUAGE}, the marking bound and the loop limit can cut the
+     * languages of the net with and without the place differently, so a place that is not implicit may turn out to be
+     * implicit for larger bounds, see {@link #isBoundDependent()}.
+     */
+    public static final class BoundedResult {
+        private final Place place;
+        private final boolean implicit;
+        private final boolean boundDependent;
+        private final int maxTraceLength;
+        private final int loopExecutionLimit;
+        private final int markingBound;
+        private final List<String> witnessTrace;
+
+        BoundedResult(Place place, boolean implicit, boolean boundDependent, int maxTraceLength,
+                      int loopExecutionLimit, int markingBound, List<String> witnessTrace) {
+            this.place = place;
+            this.implicit = implicit;
+            this.boundDependent = boundDependent;
+            this.maxTraceLength = maxTraceLength;
+            this.loopExecutionLimit = loopExecutionLimit;
+            this.markingBound = markingBound;
+            this.witnessTrace = witnessTrace;
+        }
+
+        /**
+         * @return the place in the net passed to the finder
+         */
+        public Place getPlace() {
+            return place;
+        }
+
+        public boolean isImplicit() {
+            return implicit;
+        }
+
+        /**
+         * @return true if the result may change for larger bounds, i.e. if the place is implicit or if it is not
+         * implicit without a witness trace
+         */
+        public boolean isBoundDependent() {
+            return boundDependent;
+        }
+
+        /**
+         * @return the maximum trace length of the exploration this result holds for
+         */
+        public int getMaxTraceLength() {
+            return maxTraceLength;
+        }
+
+        public int getLoopExecutionLimit() {
+            return loopExecutionLimit;
+        }
+
+        public int getMarkingBound() {
+            return markingBound;
+        }
+
+        /**
+         * @return a trace that is only possible without the place, or null if the place is implicit or if the
+         * language has been compared as a whole
+         */
+        public List<String> getWitnessTrace() {
+            return witnessTrace;
+        }
+
+        @Override
+        public String toString() {
+            String bounds = "trace length " + maxTraceLength + ", loop limit " + loopExecutionLimit
+                    + ", marking bound " + markingBound;
+            if (implicit) {
+                return "Place " + place.getLabel() + " is implicit up to " + bounds;
+            }
+            return "Place " + place.getLabel() + " is not implicit" + (witnessTrace == null ? "" : ", removing it "
+                    + "would enable the trace " + witnessTrace) + " (found with " + bounds
+                    + (boundDependent ? ", may be implicit for larger bounds)" : ")");
+        }
+    }
+
+    /**
+     * The outcome of the check of a single place.
+     */
+    private static final class PlaceCheck {
+        private final boolean implicit;
+        private final String reason;
+        private final List<String> witnessTrace;
+
+        PlaceCheck(boolean implicit, String reason, List<String> witnessTrace) {
+            this.implicit = implicit;
+            this.reason = reason;
+            this.witnessTrace = witnessTrace;
         }
-        return implicitPlaces;
     }
 
     private boolean isPlaceTheOnlyInputForOneTransition(Place p) {
@@ -0,0 +1,7 @@
+package org.processmining.implicitplaceidentification.algorithms;
+
+public enum LanguageComparisonMode {
+    FULL_LANGUAGE,
+    LOCKSTEP,
+    LOCKSTEP_WITH_PARTIAL_ORDER_REDUCTION
+}
@@ -0,0 +1,79 @@
+package org.processmining.implicitplaceidentification.algorithms;
+
+import com.google.common.collect.BiMap;
+import org.deckfour.xes.model.XLog;
+import org.processmining.implicitplaceidentification.algorithms.util.HistoryDependencyMatrix;
+import org.processmining.implicitplaceidentification.algorithms.util.IndexedPetrinet;
+import org.processmining.implicitplaceidentification.algorithms.util.VariantReplayer;
+import org.processmining.models.graphbased.directed.petrinet.Petrinet;
+import org.processmining.models.graphbased.directed.petrinet.elements.Place;
+import org.processmining.models.graphbased.directed.petrinet.elements.Transition;
+import org.processmining.models.semantics.petrinet.Marking;
+
+import java.util.*;
+
+/**
+ * This class identifies implicit places by replaying an event log on the net, like
+ * {@link ReplayBasedImplicitPlaceFinder}, but instead of searching pairs p2, p3 with p1 = p2 + p3 it looks for
+ * places whose marking history is a non-negative combination of the marking histories of any number of other places.
+ * The dependencies between all histories are computed by one exact elimination on the matrix of replayed markings
+ * (see {@link HistoryDependencyMatrix}), so there is no pair enumeration.
+ * <p>
+ * Same requirements for the input as {@link ReplayBasedImplicitPlaceFinder}.
+ */
+public class LinearReplayBasedImplicitPlaceFinder {
+    private final BiMap<Place, Integer> placeToIndexMap;
+    /**
+     * per place index the indices of the places whose histories combine to its history
+     */
+    private final Map<Integer, BitSet> combinations;
+
+    public LinearReplayBasedImplicitPlaceFinder(Petrinet petrinet, Marking initialMarking, XLog log) {
+        IndexedPetrinet indexedNet = new IndexedPetrinet(petrinet);
+        placeToIndexMap = indexedNet.getPlaceToIndexMap();
+        BiMap<Transition, Integer> transitionToIndexMap = indexedNet.getTransitionToIndexMap();
+
+        HashMap<String, Transition> transitionLabelsToTransitionMap = new HashMap<>();
+        petrinet.getTransitions().forEach(t -> transitionLabelsToTransitionMap.put(t.getLabel(), t));
+        List<int[]> variants = new ArrayList<>();
+        for (ArrayList<Transition> trace : ReplayBasedImplicitPlaceFinder.mapTracesToTransitionSequences(
+                ReplayBasedImplicitPlaceFinder.extractVariantsFromLog(log), transitionLabelsToTransitionMap)) {
+            variants.add(trace.stream().mapToInt(transitionToIndexMap::get).toArray());
+        }
+
+        HistoryDependencyMatrix matrix = new HistoryDependencyMatrix(indexedNet.getNumberOfPlaces());
+        matrix.addHistories(VariantReplayer.replay(indexedNet, indexedNet.toMarkingVector(initialMarking), variants,
+                null));
+        combinations = matrix.getNonNegativeCombinations();
+    }
+
+    /**
+     * Finds implicit places in the Petri net.
+     *
+     * @return a set of implicit places in the Petri net
+     */
+    public Set<Place> find() {
+        Set<Place> foundImplicitPlaces = new HashSet<>();
+        for (Place place : placeToIndexMap.keySet()) {
+            if (!getPlacesImplyingP(place).isEmpty()) {
+                foundImplicitPlaces.add(place);
+            }
+        }
+        return foundImplicitPlaces;
+    }
+
+    /**
+     * @param place the place for which is determined whether is it implicit
+     * @return The places whose marking histories combine to the one of the given place. If the place is not
+     * implicit, the set is empty.
+     */
+    public Set<Place> getPlacesImplyingP(Place place) {
+        Set<Place> placesThatMakePimplicit = new HashSet<>();
+        BitSet implyingPlaceIndices = combinations.get(placeToIndexMap.get(place));
+        if (implyingPlaceIndices != null) {
+            System.out.println("Place " + place.getLabel() + " is implicit");
+            implyingPlaceIndices.stream().forEach(index -> placesThatMakePimplicit.add(placeToIndexMap.inverse().get(index)));
+        }
+        return placesThatMakePimplicit;
+    }
+}
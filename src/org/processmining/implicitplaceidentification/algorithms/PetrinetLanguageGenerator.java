@@ -1,33 +1,46 @@
 package org.processmining.implicitplaceidentification.algorithms;
 
-import org.processmining.models.graphbased.AbstractGraphNode;
-import org.processmining.models.graphbased.NodeID;
+import org.processmining.implicitplaceidentification.algorithms.util.ExplorationBudget;
+import org.processmining.implicitplaceidentification.algorithms.util.IndexedPetrinet;
+import org.processmining.implicitplaceidentification.algorithms.util.LanguageAutomaton;
+import org.processmining.implicitplaceidentification.algorithms.util.StubbornSets;
 import org.processmining.models.graphbased.directed.petrinet.Petrinet;
 import org.processmining.models.graphbased.directed.petrinet.analysis.WorkflowNetUtils;
-import org.processmining.models.graphbased.directed.petrinet.elements.Place;
-import org.processmining.models.graphbased.directed.petrinet.elements.Transition;
 import org.processmining.models.semantics.petrinet.Marking;
 import org.processmining.plugins.petrinet.behavioralanalysis.woflan.WoflanDiagnosis;
 
 import java.util.*;
-import java.util.stream.Collectors;
 
 /**
  * This class can be used to generate a possibly large subset of the language a given sound Workflow net.
+ * <p>
+ * The net is explored by a depth-first search on marking vectors of an {@link IndexedPetrinet}, which also supports
+ * arc weights > 1. The search uses an explicit stack and a single trace buffer instead of recursion, and counts how
+ * often every transition has been fired in every marking on the current path, so the loop limit is checked in
+ * constant time.
+ * <p>
+ * Instances keep no state between calls except for their immutable budget, all search state is local to a call, so
+ * one instance can be used by several threads at once.
  */
 public class PetrinetLanguageGenerator {
+    /**
+     * number of steps of a search between two checks of the budget
+     */
+    private static final int BUDGET_CHECK_INTERVAL = 1 << 12;
+
+    private final ExplorationBudget budget;
 
-    // TODO use incidence matrices and methods from Algebra class (e.g. fire)! This also enables support for arc
-    //  weights > 1
+    public PetrinetLanguageGenerator() {
+        this(ExplorationBudget.unlimited());
+    }
 
-    private Set<Stack<String>> languageSet = new HashSet<>();
-    private Stack<String> trace = new Stack<>();
-    private Stack<String> previousTrace = new Stack<>();
-    private Stack<Marking> markingTrace = new Stack<>();
     /**
-     * List of all transition node-ids in the net
+     * @param budget the budget of every search, a search that exceeds it is cancelled by a
+     *               {@link java.util.concurrent.CancellationException}
      */
-    private List<NodeID> transitionNodeIds = new ArrayList<>();
+    public PetrinetLanguageGenerator(ExplorationBudget budget) {
+        this.budget = budget;
+    }
 
     /**
      * This method generates the language a possibly large subset of a given sound Workflow net.
@@ -46,103 +59,580 @@ public class PetrinetLanguageGenerator {
         //check if net is a sound WFN, if not, throw illegal argument exception
         //checkOnSoundWFNness(net);
 
-        transitionNodeIds =
-                net.getTransitions().stream().map(AbstractGraphNode::getId).sorted().collect(Collectors.toList());
-        languageSet = new HashSet<>();
-        trace = new Stack<>();
-        previousTrace = new Stack<>();
-        markingTrace = new Stack<>();
-        markingTrace.push(initialMarking);
+        IndexedPetrinet indexedNet = new IndexedPetrinet(net);
+        String[] labels = new String[indexedNet.getNumberOfTransitions()];
+        indexedNet.getTransitionToIndexMap().forEach((t, index) -> labels[index] = t.getLabel());
+
+        Set<Stack<String>> languageSet = new HashSet<>();
+        generate(indexedNet, indexedNet.toMarkingVector(initialMarking), maxTraceLength, loopExecutionLimit,
+                markingBound, (trace, length) -> {
+                    Stack<String> word = new Stack<>();
+                    for (int i = 0; i < length; i++) {
+                        word.push(labels[trace[i]]);
+                    }
+                    languageSet.add(word);
+                });
+        return languageSet;
+    }
+
+    /**
+     * Generates the same language as {@link #generate(Petrinet, Marking, int, int, int)}, but stores it as a
+     * {@link LanguageAutomaton} that shares common prefixes and suffixes of the traces instead of keeping a copy of
+     * every trace. Markings that are reached again through another interleaving reuse the suffix language that has
+     * been explored from them before, so concurrency does not multiply the work.
+     *
+     * @return an approximation of the language of the net
+     */
+    public LanguageAutomaton generateAutomaton(Petrinet net, Marking initialMarking, int maxTraceLength,
+                                               int loopExecutionLimit, int markingBound) {
+        IndexedPetrinet indexedNet = new IndexedPetrinet(net);
+        return generateAutomaton(indexedNet, indexedNet.toMarkingVector(initialMarking), maxTraceLength,
+                loopExecutionLimit, markingBound);
+    }
+
+    /**
+     * Generates the language of a net given as {@link IndexedPetrinet} as automaton, see
+     * {@link #generateAutomaton(Petrinet, Marking, int, int, int)}. The net may be a view without some places, see
+     * {@link IndexedPetrinet#withoutPlaces(BitSet)}.
+     *
+     * @param initialMarking the initial marking vector, it is not changed
+     * @return an approximation of the language of the net
+     */
+    public LanguageAutomaton generateAutomaton(IndexedPetrinet net, int[] initialMarking, int maxTraceLength,
+                                               int loopExecutionLimit, int markingBound) {
+        LanguageAutomaton language = new LanguageAutomaton();
+        int[] labelOfTransition = new int[net.getNumberOfTransitions()];
+        net.getTransitionToIndexMap().forEach((t, index) -> labelOfTransition[index] = language.intern(t.getLabel()));
+
+        SuffixLanguageExplorer explorer = new SuffixLanguageExplorer(net, loopExecutionLimit, markingBound, budget);
+        int initialNode = explorer.explore(initialMarking, maxTraceLength);
+        explorer.addTo(language, initialNode, labelOfTransition);
+        return language;
+    }
+
+    /**
+     * Receives the traces of a generated language.
+     */
+    public interface TraceConsumer {
+        /**
+         * @param trace  buffer with the transition indices of the trace, only valid during the call
+         * @param length the length of the trace
+         */
+        void accept(int[] trace, int length);
+    }
+
+    /**
+     * Generates the language of a net given as {@link IndexedPetrinet} and passes every trace to the consumer.
+     * A trace is generated when the search cannot be continued from its marking, i.e. when no transition is
+     * enabled within the bounds.
+     *
+     * @param net                the net
+     * @param initialMarking     the initial marking vector, it is not changed
+     * @param maxTraceLength     the maximum trace length a word in the generated output can have
+     * @param loopExecutionLimit the number how many times a transition may fire in the same marking during the
+     *                           generation of one trace
+     * @param markingBound       the marking bound for all places in the net
+     * @param consumer           receives the generated traces
+     */
+    public void generate(IndexedPetrinet net, int[] initialMarking, int maxTraceLength, int loopExecutionLimit,
+                         int markingBound, TraceConsumer consumer) {
+        explore(net, initialMarking, -1, maxTraceLength, loopExecutionLimit, markingBound, consumer);
+    }
 
-        return generateRecursively(net, initialMarking, maxTraceLength, loopExecutionLimit, markingBound);
+    /**
+     * Explores the net with and without a place in lockstep and stops at the first firing sequence that is enabled
+     * in the net without the place but not in the net itself. Removing a place only removes constraints, so every
+     * firing sequence of the net is also enabled without the place and such a sequence is the only possible
+     * difference. The net without the place is explored like {@link #generate(IndexedPetrinet, int[], int, int, int,
+     * TraceConsumer)} does, the tokens of the place are tracked alongside to detect the divergence.
+     *
+     * @param net                the net
+     * @param initialMarking     the initial marking vector, it is not changed
+     * @param place              index of the place that is checked
+     * @param maxTraceLength     the maximum trace length that is explored
+     * @param loopExecutionLimit the number how many times a transition may fire in the same marking during the
+     *                           generation of one trace
+     * @param markingBound       the marking bound for all places in the net except the checked one
+     * @return the transition indices of a firing sequence whose last transition is not enabled in the net because
+     * of the place, or null if there is none within the bounds
+     */
+    public int[] findDivergingTrace(IndexedPetrinet net, int[] initialMarking, int place, int maxTraceLength,
+                                    int loopExecutionLimit, int markingBound) {
+        return explore(net, initialMarking, place, maxTraceLength, loopExecutionLimit, markingBound,
+                (trace, length) -> {
+                });
     }
 
-    private Set<Stack<String>> generateRecursively(Petrinet net, Marking initialMarking, int maxTraceLength,
-                                                   int loopExecutionLimit,
-                                                   int markingBound) {
-        // TODO schreibe methode die check hat, ob final marking erreicht ist. wenn ja, return sofort (nur wenn ich
-        //  in die richtung vertiefen will)
+    /**
+     * Finds a firing sequence like {@link #findDivergingTrace(IndexedPetrinet, int[], int, int, int, int)}, but
+     * with a partial-order reduction: in every marking only the enabled transitions of a {@link StubbornSets stubborn
+     * set} are fired, which contains only one order of transitions that are independent of each other and of the
+     * place. The reduced markings are searched breadth-first, so every marking is explored once and no loop limit is
+     * needed. The reduction keeps the length of the shortest diverging traces, so if a diverging trace of at most the
+     * maximum length exists, a shortest one is found.
+     *
+     * @param net            the net
+     * @param initialMarking the initial marking vector, it is not changed
+     * @param place          index of the place that is checked
+     * @param maxTraceLength the maximum trace length that is explored
+     * @param markingBound   the marking bound for all places in the net except the checked one
+     * @return the transition indices of a shortest firing sequence whose last transition is not enabled in the net
+     * because of the place, or null if there is none within the bounds
+     */
+    public int[] findDivergingTraceWithPartialOrderReduction(IndexedPetrinet net, int[] initialMarking, int place,
+                                                             int maxTraceLength, int markingBound) {
+        StubbornSets stubbornSets = new StubbornSets(net, place, markingBound);
+        int[] successors = new int[net.getNumberOfTransitions()];
+        // the reached markings in the order of their discovery, with the marking and transition each was reached by
+        HashSet<MarkingKey> reached = new HashSet<>();
+        List<MarkingKey> markings = new ArrayList<>();
+        int[] predecessors = new int[16];
+        int[] incomingTransitions = new int[16];
+        MarkingKey initial = new MarkingKey(initialMarking.clone(), net.hash(initialMarking));
+        reached.add(initial);
+        markings.add(initial);
 
-        for (NodeID id : transitionNodeIds) {
-            Transition t = net.getTransitions().stream().filter(trans -> trans.getId().equals(id)).findFirst().get();
-            if (isEnabled(initialMarking, net, t, markingBound) && trace.size() <= maxTraceLength && !loopLimitCheck(initialMarking
-                    , t, loopExecutionLimit)) {
-                previousTrace = (Stack<String>) trace.clone();
-                trace.push(t.getLabel());
-                Marking m = fire(initialMarking, net, t);
-                markingTrace.push(m);
-                generateRecursively(net, m, maxTraceLength, loopExecutionLimit, markingBound);
+        int endOfLevel = 1;
+        int depth = 0;
+        for (int s = 0; s < markings.size(); s++) {
+            if ((s + 1) % BUDGET_CHECK_INTERVAL == 0) {
+                budget.check();
+            }
+            if (s == endOfLevel) {
+                depth++;
+                endOfLevel = markings.size();
+            }
+            int[] m = markings.get(s).marking;
+            int diverging = stubbornSets.findDivergingTransition(m);
+            if (diverging >= 0) {
+                int[] trace = new int[depth + 1];
+                trace[depth] = diverging;
+                for (int i = depth - 1, node = s; i >= 0; i--, node = predecessors[node]) {
+                    trace[i] = incomingTransitions[node];
+                }
+                return trace;
+            }
+            if (depth == maxTraceLength) {
+                continue;
+            }
+            int numberOfSuccessors = stubbornSets.computeEnabledStubbornTransitions(m, successors);
+            for (int i = 0; i < numberOfSuccessors; i++) {
+                int[] successor = m.clone();
+                long hash = net.fire(successor, successors[i], markings.get(s).hash);
+                MarkingKey key = new MarkingKey(successor, hash);
+                if (!reached.add(key)) {
+                    continue;
+                }
+                int id = markings.size();
+                if (id == predecessors.length) {
+                    predecessors = Arrays.copyOf(predecessors, 2 * id);
+                    incomingTransitions = Arrays.copyOf(incomingTransitions, 2 * id);
+                }
+                predecessors[id] = s;
+                incomingTransitions[id] = successors[i];
+                markings.add(key);
             }
         }
+        return null;
+    }
 
-        if (trace.size() > previousTrace.size()) {
-            languageSet.add((Stack<String>) trace.clone());
+    /**
+     * The depth-first search behind {@link #generate(IndexedPetrinet, int[], int, int, int, TraceConsumer)} and
+     * {@link #findDivergingTrace(IndexedPetrinet, int[], int, int, int, int)}.
+     *
+     * @param removedPlace a place that is ignored when checking whether a transition is enabled, or -1
+     * @return the first diverging trace if a place is ignored, null otherwise
+     */
+    private int[] explore(IndexedPetrinet net, int[] initialMarking, int removedPlace, int maxTraceLength,
+                          int loopExecutionLimit, int markingBound, TraceConsumer consumer) {
+        int numberOfTransitions = net.getNumberOfTransitions();
+        int[] m = initialMarking.clone();
+        // the visit counters belong to markings of the net without the removed place, so the marking is fired in
+        // the view without it, which keeps the hash of the marking with an empty removed place up to date, and the
+        // tokens of the removed place are tracked alongside
+        IndexedPetrinet keyNet = removedPlace >= 0 ? net.withoutPlace(removedPlace) : net;
+        int[] effectOnRemovedPlace = new int[numberOfTransitions];
+        for (int t = 0; removedPlace >= 0 && t < numberOfTransitions; t++) {
+            int[] effectPlaces = net.getEffectPlaces(t);
+            for (int i = 0; i < effectPlaces.length; i++) {
+                if (effectPlaces[i] == removedPlace) {
+                    effectOnRemovedPlace[t] = net.getEffects(t)[i];
+                }
+            }
         }
+        // the stack: per depth the marking (as key for the visit counters), the next transition to try and whether
+        // a transition has been fired in this marking. The trace buffer holds the fired transitions.
+        int maxDepth = maxTraceLength + 1;
+        int[] trace = new int[maxDepth];
+        int[] nextTransition = new int[maxDepth + 1];
+        boolean[] hasSuccessor = new boolean[maxDepth + 1];
+        MarkingKey[] markings = new MarkingKey[maxDepth + 1];
+        // per marking on the current path, how often each transition has been fired in it on the path. The last
+        // entry is the sum, so entries can be removed as soon as the marking is not on the path anymore.
+        HashMap<MarkingKey, int[]> visits = new HashMap<>();
 
-        if (!trace.isEmpty()) {
-            previousTrace = (Stack<String>) trace.clone();
-            trace.pop();
-            markingTrace.pop();
-        }
+        int depth = 0;
+        int[] initialKey = markingKey(m, removedPlace);
+        long hash = net.hash(initialKey);
+        markings[0] = new MarkingKey(initialKey, hash);
+        long steps = 0;
+        while (depth >= 0) {
+            if (++steps % BUDGET_CHECK_INTERVAL == 0) {
+                budget.check();
+            }
+            int t = depth < maxDepth ? nextTransition[depth] : numberOfTransitions;
+            int[] visitsInMarking = visits.get(markings[depth]);
+            while (t < numberOfTransitions && !(isEnabled(net, m, t, removedPlace)
+                    && net.isWithinBound(m, t, markingBound, removedPlace)
+                    && (visitsInMarking == null || visitsInMarking[t] < loopExecutionLimit))) {
+                t++;
+            }
 
+            if (t < numberOfTransitions && removedPlace >= 0 && !net.isEnabled(m, t)) {
+                // t is only enabled because the place has been removed
+                trace[depth] = t;
+                return Arrays.copyOf(trace, depth + 1);
+            }
 
-        return languageSet;
+            if (t < numberOfTransitions) {
+                // descend
+                nextTransition[depth] = t + 1;
+                hasSuccessor[depth] = true;
+                int[] counters = visits.computeIfAbsent(markings[depth], k -> new int[numberOfTransitions + 1]);
+                counters[t]++;
+                counters[numberOfTransitions]++;
+                trace[depth] = t;
+                hash = keyNet.fire(m, t, hash);
+                if (removedPlace >= 0) {
+                    m[removedPlace] += effectOnRemovedPlace[t];
+                }
+                depth++;
+                markings[depth] = new MarkingKey(markingKey(m, removedPlace), hash);
+                nextTransition[depth] = 0;
+                hasSuccessor[depth] = false;
+            } else {
+                // backtrack, traces that cannot be extended belong to the language
+                if (!hasSuccessor[depth] && depth > 0) {
+                    consumer.accept(trace, depth);
+                }
+                depth--;
+                if (depth >= 0) {
+                    hash = keyNet.unfire(m, trace[depth], hash);
+                    if (removedPlace >= 0) {
+                        m[removedPlace] -= effectOnRemovedPlace[trace[depth]];
+                    }
+                    int[] counters = visits.get(markings[depth]);
+                    counters[trace[depth]]--;
+                    if (--counters[numberOfTransitions] == 0) {
+                        visits.remove(markings[depth]);
+                    }
+                }
+            }
+        }
+        return null;
     }
 
-    private Marking fire(Marking m, Petrinet net, Transition t) {
-        Marking newMarking = new Marking(m); // clone
-        net.getOutEdges(t).forEach(e -> newMarking.add((Place) e.getTarget(), 1));
-        Marking consumed = new Marking();
-        net.getInEdges(t).forEach(e -> consumed.add((Place) e.getSource(), 1));
-        newMarking.minus(consumed);
-        return newMarking;
+    /**
+     * @return a copy of the marking in which the removed place is always empty, so markings that only differ in it
+     * are the same marking of the net without the place
+     */
+    private static int[] markingKey(int[] m, int removedPlace) {
+        int[] key = m.clone();
+        if (removedPlace >= 0) {
+            key[removedPlace] = 0;
+        }
+        return key;
     }
 
-    private boolean isEnabled(Marking m, Petrinet net, Transition t, int markingBound) {
-        Marking minimumMarking = new Marking();
-        net.getInEdges(t).forEach(e -> minimumMarking.add((Place) e.getSource(), 1));
-        HashSet<Place> actualPlaces = new HashSet<>(m);
-        HashSet<Place> minimumPlaces = new HashSet<>(minimumMarking);
-
-        return actualPlaces.containsAll(minimumPlaces) && boundedMarkingCheck(m, net, t, markingBound);
+    private static boolean isEnabled(IndexedPetrinet net, int[] m, int t, int removedPlace) {
+        int[] inputs = net.getInputPlaces(t);
+        int[] inputWeights = net.getInputWeights(t);
+        for (int i = 0; i < inputs.length; i++) {
+            if (inputs[i] != removedPlace && m[inputs[i]] < inputWeights[i]) {
+                return false;
+            }
+        }
+        return true;
     }
 
-    private boolean boundedMarkingCheck(Marking m, Petrinet net, Transition t, int markingBound) {
-        Marking inputPlaces = new Marking();
-        Marking outputPlaces = new Marking();
+    /**
+     * Explores a net like {@link #generate(IndexedPetrinet, int[], int, int, int, TraceConsumer)}, but builds an
+     * acyclic automaton over transitions with a node per explored marking and remaining depth instead of enumerating
+     * the traces. The node of a marking that is reached again with the same remaining depth, e.g. through another
+     * interleaving of concurrent transitions, is reused.
+     * <p>
+     * The suffix language of a marking depends on the current path only through the loop limit, i.e. if a marking of
+     * the path can be reached again from it. This is only possible for markings on a cycle of the reachability graph,
+     * so the reachability graph is built first and nodes of markings on a cycle are never reused.
+     */
+    private static final class SuffixLanguageExplorer {
+        private final IndexedPetrinet net;
+        private final int loopExecutionLimit;
+        private final int markingBound;
+        private final ExplorationBudget budget;
+        private final BitSet acceptingNodes = new BitSet();
+        private final List<int[]> edgeTransitions = new ArrayList<>();
+        private final List<int[]> edgeTargets = new ArrayList<>();
+        private final HashMap<SuffixKey, Integer> nodes = new HashMap<>();
+        private final HashSet<MarkingKey> cyclicMarkings = new HashSet<>();
 
-        net.getInEdges(t).forEach(e -> inputPlaces.add((Place) e.getSource(), 1));
-        net.getOutEdges(t).forEach(e -> outputPlaces.add((Place) e.getTarget(), 1));
+        SuffixLanguageExplorer(IndexedPetrinet net, int loopExecutionLimit, int markingBound,
+                               ExplorationBudget budget) {
+            this.net = net;
+            this.loopExecutionLimit = loopExecutionLimit;
+            this.markingBound = markingBound;
+            this.budget = budget;
+        }
 
-        for (Place p : outputPlaces) {
-            long tokensInMarking = m.stream().filter(place -> place.equals(p)).count();
-            long tokensToBeConsumedFromP = inputPlaces.stream().filter(place -> place.equals(p)).count();
-            long tokensInMarkingAfterFire = tokensInMarking - tokensToBeConsumedFromP;
+        /**
+         * @return the initial node
+         */
+        int explore(int[] initialMarking, int maxTraceLength) {
+            int numberOfTransitions = net.getNumberOfTransitions();
+            // the stack as in generate, and per depth the outgoing edges of the node that is being explored
+            int maxDepth = maxTraceLength + 1;
+            findCyclicMarkings(initialMarking, maxDepth);
+            int[] m = initialMarking.clone();
+            long hash = net.hash(m);
+            int[] trace = new int[maxDepth];
+            int[] nextTransition = new int[maxDepth + 1];
+            MarkingKey[] markings = new MarkingKey[maxDepth + 1];
+            int[][] transitions = new int[maxDepth + 1][numberOfTransitions];
+            int[][] targets = new int[maxDepth + 1][numberOfTransitions];
+            int[] numberOfEdges = new int[maxDepth + 1];
+            HashMap<MarkingKey, int[]> visits = new HashMap<>();
 
-            if (tokensInMarkingAfterFire >= markingBound) {
-                return false;
+            int depth = 0;
+            markings[0] = new MarkingKey(m.clone(), hash);
+            long steps = 0;
+            while (true) {
+                if (++steps % BUDGET_CHECK_INTERVAL == 0) {
+                    budget.check();
+                }
+                int t = depth < maxDepth ? nextTransition[depth] : numberOfTransitions;
+                int[] visitsInMarking = visits.get(markings[depth]);
+                while (t < numberOfTransitions && !(isEnabledWithinBound(m, t)
+                        && (visitsInMarking == null || visitsInMarking[t] < loopExecutionLimit))) {
+                    t++;
+                }
+
+                if (t < numberOfTransitions) {
+                    nextTransition[depth] = t + 1;
+                    hash = net.fire(m, t, hash);
+                    Integer known = nodes.get(new SuffixKey(new MarkingKey(m, hash), maxDepth - depth - 1));
+                    if (known != null) {
+                        hash = net.unfire(m, t, hash);
+                        transitions[depth][numberOfEdges[depth]] = t;
+                        targets[depth][numberOfEdges[depth]++] = known;
+                        continue;
+                    }
+                    // descend
+                    int[] counters = visits.computeIfAbsent(markings[depth], k -> new int[numberOfTransitions + 1]);
+                    counters[t]++;
+                    counters[numberOfTransitions]++;
+                    trace[depth] = t;
+                    depth++;
+                    markings[depth] = new MarkingKey(m.clone(), hash);
+                    nextTransition[depth] = 0;
+                    numberOfEdges[depth] = 0;
+                } else {
+                    // backtrack, nodes without successors accept like the traces emitted by generate
+                    int node = addNode(depth > 0 && numberOfEdges[depth] == 0, transitions[depth], targets[depth],
+                            numberOfEdges[depth]);
+                    if (depth > 0 && !cyclicMarkings.contains(markings[depth])) {
+                        nodes.put(new SuffixKey(markings[depth], maxDepth - depth), node);
+                    }
+                    if (depth == 0) {
+                        return node;
+                    }
+                    depth--;
+                    hash = net.unfire(m, trace[depth], hash);
+                    int[] counters = visits.get(markings[depth]);
+                    counters[trace[depth]]--;
+                    if (--counters[numberOfTransitions] == 0) {
+                        visits.remove(markings[depth]);
+                    }
+                    transitions[depth][numberOfEdges[depth]] = trace[depth];
+                    targets[depth][numberOfEdges[depth]++] = node;
+                }
             }
         }
 
-        return true;
+        private boolean isEnabledWithinBound(int[] m, int t) {
+            return net.isEnabled(m, t) && net.isWithinBound(m, t, markingBound, -1);
+        }
+
+        /**
+         * Builds the graph of the markings that are reachable within the maximum depth and collects the markings on
+         * its cycles, i.e. in strongly connected components with more than one marking or with a self-loop. A cycle
+         * that can be closed during the exploration lies within this graph.
+         */
+        private void findCyclicMarkings(int[] initialMarking, int maxDepth) {
+            // breadth-first search
+            HashMap<MarkingKey, Integer> ids = new HashMap<>();
+            List<MarkingKey> markings = new ArrayList<>();
+            List<int[]> successors = new ArrayList<>();
+            int[] m = initialMarking.clone();
+            MarkingKey initial = new MarkingKey(m.clone(), net.hash(m));
+            ids.put(initial, 0);
+            markings.add(initial);
+            int endOfLevel = 1;
+            int depth = 0;
+            for (int s = 0; s < markings.size(); s++) {
+                if ((s + 1) % BUDGET_CHECK_INTERVAL == 0) {
+                    budget.check();
+                }
+                if (s == endOfLevel) {
+                    depth++;
+                    endOfLevel = markings.size();
+                }
+                int[] marking = markings.get(s).marking;
+                int[] successorsOfS = new int[0];
+                for (int t = 0; depth < maxDepth && t < net.getNumberOfTransitions(); t++) {
+                    if (!isEnabledWithinBound(marking, t)) {
+                        continue;
+                    }
+                    m = marking.clone();
+                    long hash = net.fire(m, t, markings.get(s).hash);
+                    MarkingKey successor = new MarkingKey(m, hash);
+                    Integer id = ids.get(successor);
+                    if (id == null) {
+                        id = markings.size();
+                        ids.put(successor, id);
+                        markings.add(successor);
+                    }
+                    successorsOfS = Arrays.copyOf(successorsOfS, successorsOfS.length + 1);
+                    successorsOfS[successorsOfS.length - 1] = id;
+                }
+                successors.add(successorsOfS);
+            }
+
+            // Tarjan's algorithm with an explicit stack
+            int n = markings.size();
+            int[] index = new int[n];
+            int[] lowLink = new int[n];
+            Arrays.fill(index, -1);
+            boolean[] onStack = new boolean[n];
+            int[] stack = new int[n];
+            int stackSize = 0;
+            int[] callStack = new int[n];
+            int[] nextSuccessor = new int[n];
+            int nextIndex = 0;
+            for (int root = 0; root < n; root++) {
+                if (index[root] >= 0) {
+                    continue;
+                }
+                int callDepth = 0;
+                callStack[0] = root;
+                index[root] = lowLink[root] = nextIndex++;
+                stack[stackSize++] = root;
+                onStack[root] = true;
+                while (callDepth >= 0) {
+                    int v = callStack[callDepth];
+                    int[] successorsOfV = successors.get(v);
+                    if (nextSuccessor[v] < successorsOfV.length) {
+                        int w = successorsOfV[nextSuccessor[v]++];
+                        if (w == v) {
+                            cyclicMarkings.add(markings.get(v));
+                        } else if (index[w] < 0) {
+                            index[w] = lowLink[w] = nextIndex++;
+                            stack[stackSize++] = w;
+                            onStack[w] = true;
+                            callStack[++callDepth] = w;
+                        } else if (onStack[w]) {
+                            lowLink[v] = Math.min(lowLink[v], index[w]);
+                        }
+                        continue;
+                    }
+                    if (lowLink[v] == index[v]) {
+                        int w;
+                        boolean cyclic = stack[stackSize - 1] != v;
+                        do {
+                            w = stack[--stackSize];
+                            onStack[w] = false;
+                            if (cyclic) {
+                                cyclicMarkings.add(markings.get(w));
+                            }
+                        } while (w != v);
+                    }
+                    callDepth--;
+                    if (callDepth >= 0) {
+                        int parent = callStack[callDepth];
+                        lowLink[parent] = Math.min(lowLink[parent], lowLink[v]);
+                    }
+                }
+            }
+        }
+
+        private int addNode(boolean accepting, int[] transitions, int[] targets, int numberOfEdges) {
+            int node = edgeTransitions.size();
+            acceptingNodes.set(node, accepting);
+            edgeTransitions.add(Arrays.copyOf(transitions, numberOfEdges));
+            edgeTargets.add(Arrays.copyOf(targets, numberOfEdges));
+            return node;
+        }
+
+        /**
+         * Adds the language of the explored automaton, relabeled from transitions to their labels.
+         */
+        void addTo(LanguageAutomaton language, int initialNode, int[] labelOfTransition) {
+            int[][] labels = new int[edgeTransitions.size()][];
+            for (int node = 0; node < labels.length; node++) {
+                labels[node] = Arrays.stream(edgeTransitions.get(node)).map(t -> labelOfTransition[t]).toArray();
+            }
+            language.addAll(initialNode, acceptingNodes, labels, edgeTargets.toArray(new int[0][]));
+        }
     }
 
     /**
-     * Checks whether firing the transition with the current marking would exceed the loop limit.
-     *
-     * @param m marking
-     * @param t transition to be fired
-     * @return false if the transition has already been fired with this marking at least as often as the loop limit.
-     * True otherwise.
+     * A marking vector with its {@link IndexedPetrinet#hash(int[])}, which is used as hash code.
      */
-    private boolean loopLimitCheck(Marking m, Transition t, int loopExecutionLimit) {
-        int timesAlreadyVisited = 0;
-        for (int i = 0; i < trace.size(); i++) {
-            if (markingTrace.get(i).equals(m) && trace.get(i).equals(t.getLabel())) {
-                timesAlreadyVisited++;
+    private static final class MarkingKey {
+        private final int[] marking;
+        private final long hash;
+
+        MarkingKey(int[] marking, long hash) {
+            this.marking = marking;
+            this.hash = hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof MarkingKey)) {
+                return false;
             }
+            MarkingKey other = (MarkingKey) o;
+            return hash == other.hash && Arrays.equals(marking, other.marking);
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(hash);
+        }
+    }
+
+    private static final class SuffixKey {
+        private final MarkingKey marking;
+        private final int remainingDepth;
+
+        SuffixKey(MarkingKey marking, int remainingDepth) {
+            this.marking = marking;
+            this.remainingDepth = remainingDepth;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof SuffixKey)) {
+                return false;
+            }
+            SuffixKey other = (SuffixKey) o;
+            return remainingDepth == other.remainingDepth && marking.equals(other.marking);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * marking.hashCode() + remainingDepth;
         }
-        return loopExecutionLimit <= timesAlreadyVisited;
     }
 
     private static void checkOnSoundWFNness(Petrinet petrinet) {
@@ -0,0 +1,243 @@
+package org.processmining.implicitplaceidentification.algorithms;
+
+import org.processmining.implicitplaceidentification.algorithms.util.IndexedPetrinet;
+import org.processmining.implicitplaceidentification.algorithms.util.CoverabilityGraph;
+import org.processmining.models.graphbased.directed.petrinet.Petrinet;
+import org.processmining.models.graphbased.directed.petrinet.elements.Place;
+import org.processmining.models.semantics.petrinet.Marking;
+
+import java.util.*;
+
+/**
+ * This class identifies implicit places based on the reachability graph of the net, or on its coverability graph if
+ * the net is not bounded.
+ * <p>
+ * A place p is implicit iff removing it never enables a transition, i.e. iff there is no reachable marking in which
+ * an output transition of p is enabled except for the tokens in p. Up to the first such marking, the net with and
+ * the net without p have the same firing sequences, so the reachable markings of the net itself suffice to check
+ * every place. The graph is therefore built only once, by a breadth-first search, and the check of a place stops at
+ * the first counterexample, from which a shortest witness trace is reconstructed.
+ * <p>
+ * The nodes of a {@link CoverabilityGraph} represent the reachable markings exactly in all places that are bounded,
+ * so the check stays exact for bounded places of unbounded nets. An unbounded place is only reported as implicit if no
+ * node enables its output transitions except for the tokens in it at all.
+ */
+public class ReachabilityBasedImplicitPlaceFinder {
+    private final IndexedPetrinet net;
+    private final int[] m0;
+    private FindMode findMode;
+    private int maxNumberOfStates = 1 << 24;
+    /**
+     * firing sequences that prove that a place is not implicit
+     */
+    private final Map<Place, List<String>> witnessTraces = new HashMap<>();
+
+    /**
+     * built by the first call of {@link #find()}
+     */
+    private CoverabilityGraph graph;
+
+    public ReachabilityBasedImplicitPlaceFinder(Petrinet petrinet, Marking initialMarking, FindMode findMode) {
+        this.net = new IndexedPetrinet(petrinet);
+        this.m0 = net.toMarkingVector(initialMarking);
+        this.findMode = findMode;
+    }
+
+    /**
+     * @param findMode with {@link FindMode#GREEDY}, every place is checked on the net without the implicit places
+     *                 found before, so all returned places can be removed together
+     */
+    public void setFindMode(FindMode findMode) {
+        this.findMode = findMode;
+    }
+
+    /**
+     * @param maxNumberOfStates the number of nodes of the reachability or coverability graph after which the search
+     *                          gives up, 2^24 by default
+     */
+    public void setMaxNumberOfStates(int maxNumberOfStates) {
+        if (maxNumberOfStates < 1) {
+            throw new IllegalArgumentException("The maximum number of states must be positive");
+        }
+        this.maxNumberOfStates = maxNumberOfStates;
+    }
+
+    /**
+     * Finds all implicit places of the net.
+     *
+     * @return the implicit places
+     * @throws IllegalArgumentException if the graph has more nodes than allowed
+     */
+    public Set<Place> find() {
+        if (graph == null) {
+            graph = new CoverabilityGraph(net, m0, maxNumberOfStates);
+        }
+        witnessTraces.clear();
+        Set<Place> implicitPlaces = new HashSet<>();
+        BitSet removedPlaces = new BitSet();
+
+        for (int p = 0; p < net.getNumberOfPlaces(); p++) {
+            Place place = net.getPlaceToIndexMap().inverse().get(p);
+            IndexedPetrinet netWithoutRemovedPlaces =
+                    findMode == FindMode.GREEDY ? net.withoutPlaces(removedPlaces) : net;
+            int[] outputTransitions = getOutputTransitions(netWithoutRemovedPlaces, p);
+            if (outputTransitions.length == 0) {
+                System.out.println("Place " + place.getLabel() + " is not implicit because it is a sink place");
+                continue;
+            }
+
+            int[] counterexample = findCounterexample(netWithoutRemovedPlaces, p, outputTransitions);
+            if (counterexample == null && mayBeEnabledWithoutUnboundedPlace(netWithoutRemovedPlaces, p,
+                    outputTransitions)) {
+                System.out.println("Place " + place.getLabel() + " is not reported as implicit because it is " +
+                        "unbounded");
+            } else if (counterexample == null) {
+                System.out.println("Place " + place.getLabel() + " is implicit");
+                implicitPlaces.add(place);
+                removedPlaces.set(p);
+            } else {
+                int[] path = graph.getPath(counterexample[0]);
+                List<String> trace = getTrace(path, counterexample[1]);
+                if (isWitness(netWithoutRemovedPlaces, p, path, counterexample[1])) {
+                    witnessTraces.put(place, trace);
+                    System.out.println("Place " + place.getLabel() + " is not implicit because removing it would " +
+                            "enable the trace " + trace);
+                } else {
+                    System.out.println("Place " + place.getLabel() + " is not implicit because removing it would " +
+                            "enable the trace " + trace + " once its loops are repeated often enough");
+                }
+            }
+        }
+        return implicitPlaces;
+    }
+
+    /**
+     * @param place a place of the net
+     * @return a shortest trace that is only possible without the place, or null if the place is implicit, has not
+     * been checked by the last call of {@link #find()}, or is only disproved by a marking with unboundedly many tokens
+     */
+    public List<String> getWitnessTrace(Place place) {
+        return witnessTraces.get(place);
+    }
+
+    /**
+     * @return the number of nodes of the reachability or coverability graph, available after the first call of
+     * {@link #find()}
+     */
+    public int getNumberOfStates() {
+        return graph == null ? 0 : graph.size();
+    }
+
+    /**
+     * @return true if the net is bounded, available after the first call of {@link #find()}
+     */
+    public boolean isBounded() {
+        return graph != null && graph.isBounded();
+    }
+
+    /**
+     * @return the first node in breadth-first order that is bounded in the place, and the output transition of the
+     * place that is enabled in it except for the tokens in the place, or null if there is none
+     */
+    private int[] findCounterexample(IndexedPetrinet net, int place, int[] outputTransitions) {
+        for (int s = 0; s < graph.size(); s++) {
+            if (graph.get(s, place) == CoverabilityGraph.OMEGA) {
+                continue;
+            }
+            for (int t : outputTransitions) {
+                if (isEnabledOnlyWithoutPlace(net, s, t, place)) {
+                    return new int[]{s, t};
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return true if a node with unboundedly many tokens in the place enables an output transition except for the
+     * tokens in the place, which may or may not be too few
+     */
+    private boolean mayBeEnabledWithoutUnboundedPlace(IndexedPetrinet net, int place, int[] outputTransitions) {
+        if (graph.isBounded(place)) {
+            return false;
+        }
+        for (int s = 0; s < graph.size(); s++) {
+            if (graph.get(s, place) != CoverabilityGraph.OMEGA) {
+                continue;
+            }
+            for (int t : outputTransitions) {
+                if (isEnabledExceptForPlace(net, s, t, place)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private boolean isEnabledExceptForPlace(IndexedPetrinet net, int state, int t, int place) {
+        int[] inputs = net.getInputPlaces(t);
+        int[] weights = net.getInputWeights(t);
+        for (int i = 0; i < inputs.length; i++) {
+            if (inputs[i] != place && graph.get(state, inputs[i]) < weights[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isEnabledOnlyWithoutPlace(IndexedPetrinet net, int state, int t, int place) {
+        int[] inputs = net.getInputPlaces(t);
+        int[] weights = net.getInputWeights(t);
+        boolean disabledByPlace = false;
+        for (int i = 0; i < inputs.length; i++) {
+            if (graph.get(state, inputs[i]) < weights[i]) {
+                if (inputs[i] != place) {
+                    return false;
+                }
+                disabledByPlace = true;
+            }
+        }
+        return disabledByPlace;
+    }
+
+    private static int[] getOutputTransitions(IndexedPetrinet net, int place) {
+        List<Integer> outputTransitions = new ArrayList<>();
+        for (int t = 0; t < net.getNumberOfTransitions(); t++) {
+            for (int p : net.getInputPlaces(t)) {
+                if (p == place) {
+                    outputTransitions.add(t);
+                }
+            }
+        }
+        return outputTransitions.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * A path to a node with {@link CoverabilityGraph#OMEGA} may not be a firing sequence itself, since its loops may
+     * have to be repeated first.
+     *
+     * @return true if the path is a firing sequence of the net, after which t is enabled except for the place
+     */
+    private boolean isWitness(IndexedPetrinet net, int place, int[] path, int t) {
+        int[] m = m0.clone();
+        for (int transition : path) {
+            if (!net.isEnabled(m, transition)) {
+                return false;
+            }
+            net.fire(m, transition);
+        }
+        return !net.isEnabled(m, t) && net.withoutPlace(place).isEnabled(m, t);
+    }
+
+    /**
+     * @return the labels of the transitions of the path, followed by the label of t
+     */
+    private List<String> getTrace(int[] path, int t) {
+        List<String> trace = new ArrayList<>();
+        for (int transition : path) {
+            trace.add(net.getTransitionToIndexMap().inverse().get(transition).getLabel());
+        }
+        trace.add(net.getTransitionToIndexMap().inverse().get(t).getLabel());
+        return trace;
+    }
+}
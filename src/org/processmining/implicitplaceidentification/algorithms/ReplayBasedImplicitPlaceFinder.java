@@ -3,14 +3,22 @@ package org.processmining.implicitplaceidentification.algorithms;
 import com.google.common.collect.BiMap;
 import org.deckfour.xes.model.XLog;
 import org.deckfour.xes.model.XTrace;
-import org.processmining.implicitplaceidentification.algorithms.util.AlgebraClass;
+import org.processmining.implicitplaceidentification.algorithms.util.AdaptiveVariantOrder;
+import org.processmining.implicitplaceidentification.algorithms.util.CandidateTriples;
+import org.processmining.implicitplaceidentification.algorithms.util.IndexedPetrinet;
+import org.processmining.implicitplaceidentification.algorithms.util.MarkingHistoryStore;
+import org.processmining.implicitplaceidentification.algorithms.util.VariantCache;
+import org.processmining.implicitplaceidentification.algorithms.util.VariantReplayer;
+import org.processmining.implicitplaceidentification.algorithms.util.XesVariantReader;
 import org.processmining.models.graphbased.directed.petrinet.Petrinet;
 import org.processmining.models.graphbased.directed.petrinet.elements.Place;
 import org.processmining.models.graphbased.directed.petrinet.elements.Transition;
 import org.processmining.models.semantics.petrinet.Marking;
 
+import java.nio.file.Path;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 import java.util.stream.IntStream;
 
 /**
@@ -21,34 +29,203 @@ import java.util.stream.IntStream;
  * - no self loops allowed
  * <p>
  * This finder is not exclusive to inputs mined with the eST-Miner and also supports arc weights > 1
+ * <p>
+ * In {@link FindMode#GREEDY}, every implicit place is removed as soon as it is found: later checks do not use it as
+ * p2 or p3 anymore and its marking history is released. The result can therefore be removed from the net as a whole.
  * TODO places empty in beginning and end of replay?
- * TODO Findmode for safe removal
  */
-public class ReplayBasedImplicitPlaceFinder {
+public class ReplayBasedImplicitPlaceFinder implements AutoCloseable {
+    /**
+     * number of (p1, p2) pairs below which a fork-join task compares its pairs itself instead of splitting further
+     */
+    private static final int PAIRS_PER_TASK = 64;
+
     private final Petrinet petrinet;
     private final Marking initialMarking;
-    private final XLog log;
     private final HashSet<Place> foundImplicitPlaces = new HashSet<>();
     private final BiMap<Place, Integer> placeToRowMap;
     private final BiMap<Transition, Integer> transitionToColumnMap;
-    private final HashMap<ArrayList<Transition>, int[][]> markingSequences;
+    private final IndexedPetrinet indexedNet;
+    /**
+     * directory for memory-mapped marking histories, null if the histories are kept on the heap
+     */
+    private final Path spillDirectory;
+    /**
+     * all variants that have been replayed so far, including the ones that do not fit the net
+     */
+    private final HashSet<ArrayList<Transition>> replayedVariants = new HashSet<>();
+    /**
+     * marking histories of all fitting variants of the log given on construction, one row per place
+     */
+    private final MarkingHistoryStore markingHistories;
+    /**
+     * order in which the variants of {@link #markingHistories} are compared, shared by all pairs of places so that
+     * variants that disprove many pairs are checked first
+     */
+    private final AdaptiveVariantOrder variantOrder;
+    /**
+     * triples (p1, p2, p3) that are consistent with all replayed variants, null until they are needed because the
+     * histories are compared block by block or variants are added later on
+     */
+    private CandidateTriples candidates;
+    private boolean parallel = false;
+    private FindMode findMode = FindMode.FIND_ALL_POTENTIAL_IPS;
+    /**
+     * places that have been removed in {@link FindMode#GREEDY} and the places that made them implicit
+     */
+    private final BitSet removedPlaces = new BitSet();
+    private final Map<Integer, BitSet> implyingPlacesOfRemovedPlaces = new HashMap<>();
 
     public ReplayBasedImplicitPlaceFinder(Petrinet petrinet, Marking initialMarking, XLog eventLog) {
+        this(petrinet, initialMarking, eventLog, null);
+    }
+
+    /**
+     * Creates a finder that writes the marking histories to a memory-mapped file instead of keeping them on the
+     * heap. The pairwise comparison then streams over the histories block by block, so only a bounded part of them
+     * has to be resident. Use this for logs whose histories (places x events) do not fit into memory, and
+     * {@link #close()} the finder to delete the file.
+     *
+     * @param spillDirectory directory for the temporary file, or null to keep the histories on the heap
+     */
+    public ReplayBasedImplicitPlaceFinder(Petrinet petrinet, Marking initialMarking, XLog eventLog,
+                                          Path spillDirectory) {
+        this(petrinet, initialMarking, extractVariantsFromLog(eventLog), spillDirectory);
+    }
+
+    /**
+     * Creates a finder for variants that have already been extracted, e.g. loaded from a {@link VariantCache} file
+     * or shared by the finders of several subnets, so the log does not have to be read again.
+     */
+    public ReplayBasedImplicitPlaceFinder(Petrinet petrinet, Marking initialMarking, VariantCache variants) {
+        this(petrinet, initialMarking, variants.toLabelSequences(), null);
+    }
+
+    /**
+     * Creates a finder for the log in an XES file (plain or gzipped). The file is read with a streaming parser that
+     * only keeps the variants, so logs that do not fit into memory as an XLog can be used as well.
+     *
+     * @param xesFile an .xes or .xes.gz file
+     */
+    public ReplayBasedImplicitPlaceFinder(Petrinet petrinet, Marking initialMarking, Path xesFile) {
+        this(petrinet, initialMarking, XesVariantReader.read(xesFile));
+    }
+
+    private ReplayBasedImplicitPlaceFinder(Petrinet petrinet, Marking initialMarking,
+                                           HashSet<ArrayList<String>> labelSequences, Path spillDirectory) {
         this.petrinet = petrinet;
         this.initialMarking = initialMarking;
-        this.log = eventLog;
-        placeToRowMap = AlgebraClass.createPlaceToIndexBiMap(this.petrinet);
-        transitionToColumnMap = AlgebraClass.createTransitionToIndexBiMap(this.petrinet);
+        this.spillDirectory = spillDirectory;
+        indexedNet = new IndexedPetrinet(this.petrinet);
+        placeToRowMap = indexedNet.getPlaceToIndexMap();
+        transitionToColumnMap = indexedNet.getTransitionToIndexMap();
 
         // replay variants on the net (uniquely labeled, no silent transitions)
         // before: map events to transitions (simplifies adding potential support for silent transitions)
-        HashSet<ArrayList<Transition>> variants = extractVariantsFromLogAsTransitionSequences();
+        HashSet<ArrayList<Transition>> variants = mapTracesToTransitionSequences(labelSequences,
+                getTransitionLabelsToTransitionMap());
+        replayedVariants.addAll(variants);
+
+        markingHistories = replayVariantsOnNet(variants, spillDirectory);
+        variantOrder = new AdaptiveVariantOrder(markingHistories);
+    }
+
+    /**
+     * Releases the marking histories, in particular deletes their memory-mapped file if the finder has been created
+     * with a spill directory. The finder must not be used afterwards.
+     */
+    @Override
+    public void close() {
+        markingHistories.close();
+    }
+
+    /**
+     * Adds traces to the finder, e.g. the next batch of a log that is received in batches.
+     * Only variants that have not been replayed before are replayed, and their marking histories are only used to
+     * rule out triples (p1, p2, p3) that are still candidates, so nothing is recomputed from scratch. Afterwards,
+     * {@link #find()} and {@link #getPlacesImplyingP(Place)} take all traces added so far into account.
+     *
+     * @param traces the new traces
+     * @return the number of new variants that have been replayed
+     */
+    public int addTraces(XLog traces) {
+        return addTransitionSequences(extractVariantsFromLogAsTransitionSequences(traces));
+    }
+
+    /**
+     * Adds variants to the finder, see {@link #addTraces(XLog)}.
+     *
+     * @param variants the new variants as sequences of activity labels
+     * @return the number of new variants that have been replayed
+     */
+    public int addVariants(Collection<? extends List<String>> variants) {
+        HashSet<ArrayList<String>> labelSequences = new HashSet<>();
+        variants.forEach(v -> labelSequences.add(new ArrayList<>(v)));
+        return addTransitionSequences(mapTracesToTransitionSequences(labelSequences,
+                getTransitionLabelsToTransitionMap()));
+    }
+
+    private int addTransitionSequences(HashSet<ArrayList<Transition>> variants) {
+        variants.removeAll(replayedVariants);
+        replayedVariants.addAll(variants);
+
+        if (candidates == null) {
+            candidates = refineCandidates(newCandidateTriples(), markingHistories);
+        }
+        if (!variants.isEmpty()) {
+            // the histories of a batch are only needed to refine the candidates, so they are kept on the heap and
+            // discarded right away, also in spill mode
+            try (MarkingHistoryStore batchHistories = replayVariantsOnNet(variants, null)) {
+                refineCandidates(candidates, batchHistories);
+            }
+        }
+        return variants.size();
+    }
 
-        // get incidence matrix of net
-        int[][] pre = AlgebraClass.computePreIncidenceMatrix(petrinet, placeToRowMap, transitionToColumnMap);
-        int[][] incidenceMatrix = AlgebraClass.computeIncidenceMatrix(petrinet, placeToRowMap, transitionToColumnMap);
+    /**
+     * Removes all triples that contradict the given marking histories, block by block.
+     *
+     * @param candidates the candidates to be refined
+     * @param histories  marking histories
+     * @return the refined candidates
+     */
+    private CandidateTriples refineCandidates(CandidateTriples candidates, MarkingHistoryStore histories) {
+        for (int block = 0; block < histories.getNumberOfBlocks(); block++) {
+            int from = histories.getBlockStart(block);
+            int to = histories.getBlockEnd(block);
+            IntStream p1s = IntStream.range(0, placeToRowMap.size());
+            // rows of the candidates are independent, so they can be refined concurrently
+            (parallel ? p1s.parallel() : p1s).forEach(p1 -> candidates.refine(histories, p1, from, to));
+        }
+        return candidates;
+    }
+
+    /**
+     * @return candidate triples without the places that have been removed so far
+     */
+    private CandidateTriples newCandidateTriples() {
+        CandidateTriples candidateTriples = new CandidateTriples(placeToRowMap.size());
+        removedPlaces.stream().forEach(candidateTriples::removePlace);
+        return candidateTriples;
+    }
 
-        markingSequences = replayVariantsOnNet(variants, pre, incidenceMatrix);
+    /**
+     * If set to true, {@link #find()} splits the pairwise comparison of places across a fork-join pool.
+     *
+     * @param parallel whether to use all available cores for the pairwise comparison
+     */
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    /**
+     * In {@link FindMode#GREEDY}, {@link #find()} removes every implicit place as soon as it is found and returns all
+     * places removed so far. The comparison is then sequential, since every check depends on the removals before.
+     *
+     * @param findMode the find mode, {@link FindMode#FIND_ALL_POTENTIAL_IPS} by default
+     */
+    public void setFindMode(FindMode findMode) {
+        this.findMode = findMode;
     }
 
     /**
@@ -59,6 +236,16 @@ public class ReplayBasedImplicitPlaceFinder {
     public Set<Place> find() {
         foundImplicitPlaces.clear();
 
+        if (findMode == FindMode.GREEDY) {
+            return findGreedily();
+        }
+        if (candidates != null || spillDirectory != null) {
+            return findBlockwise();
+        }
+        if (parallel) {
+            return findInParallel();
+        }
+
         // pairwise comparison of markings in places
         for (Place place : placeToRowMap.keySet()) {
             if (!getPlacesImplyingP(place).isEmpty()) {
@@ -80,111 +267,231 @@ public class ReplayBasedImplicitPlaceFinder {
         int p1 = placeToRowMap.get(place);
         Set<Place> placesThatMakeP1implicit = new HashSet<>();
 
-        for (int p2 : placeToRowMap.values()) {
-            if (p1 == p2) {
+        BitSet implyingPlaceIndices;
+        if (removedPlaces.get(p1)) {
+            implyingPlaceIndices = implyingPlacesOfRemovedPlaces.get(p1);
+        } else if (candidates != null) {
+            implyingPlaceIndices = candidates.getPlacesImplying(p1);
+        } else if (spillDirectory != null) {
+            CandidateTriples candidates = newCandidateTriples();
+            for (int block = 0; block < markingHistories.getNumberOfBlocks(); block++) {
+                candidates.refine(markingHistories, p1, markingHistories.getBlockStart(block),
+                        markingHistories.getBlockEnd(block));
+            }
+            implyingPlaceIndices = candidates.getPlacesImplying(p1);
+        } else {
+            implyingPlaceIndices = getPlaceIndicesImplyingP(p1, 0, placeToRowMap.size());
+        }
+        if (!implyingPlaceIndices.isEmpty()) {
+            System.out.println("Place " + placeToRowMap.inverse().get(p1).getLabel() + " is implicit");
+            implyingPlaceIndices.stream().forEach(index -> placesThatMakeP1implicit.add(placeToRowMap.inverse().get(index)));
+        }
+        return placesThatMakeP1implicit;
+    }
+
+    /**
+     * Compares the marking history of p1 with the marking histories of all places p2 in the given index range.
+     * Only reads the marking histories, so it can be called concurrently. The variants are compared in the shared
+     * adaptive order, so most pairs are rejected after the first few variants.
+     *
+     * @param p1     index of the place for which is determined whether it is implicit
+     * @param p2From first index of p2 (inclusive)
+     * @param p2To   last index of p2 (exclusive)
+     * @return the indices of all places p2 and p3 with p1 = p2 + p3, or the places that made p1 implicit if it has
+     * been removed
+     */
+    private BitSet getPlaceIndicesImplyingP(int p1, int p2From, int p2To) {
+        if (removedPlaces.get(p1)) {
+            return (BitSet) implyingPlacesOfRemovedPlaces.get(p1).clone();
+        }
+        BitSet implyingPlaceIndices = new BitSet(placeToRowMap.size());
+
+        for (int p2 = p2From; p2 < p2To; p2++) {
+            if (p1 == p2 || removedPlaces.get(p2)) {
                 continue;
             }
             // check whether p1 > p2
-            boolean hasPotential = true;
-            for (int[][] markingHistory : markingSequences.values()) {
-                //TODO might change greater or equal to to equal and at least in one point greater to
-                if (!AlgebraClass.arrayIsGreaterOrEqualTo(markingHistory[p1], markingHistory[p2])) {
-                    hasPotential = false;
-                    break;
-                }
-            }
-            if (hasPotential) {
+            //TODO might change greater or equal to to equal and at least in one point greater to
+            if (variantOrder.isGreaterOrEqual(p1, p2)) {
                 // compute marking history of p3 and check whether p3 exists
-                HashSet<Integer> placeIndicesThatMatchP3 =
-                        IntStream.range(0, placeToRowMap.size()).boxed().collect(Collectors.toCollection(HashSet::new));
-                placeIndicesThatMatchP3.remove(p1);
-                placeIndicesThatMatchP3.remove(p2);
-                for (int[][] markingHistory : markingSequences.values()) {
-                    if (placeIndicesThatMatchP3.isEmpty()) {
-                        break;
-                    } else {
-                        int[] markingHistoryP1 = markingHistory[p1];
-                        int[] markingHistoryP2 = markingHistory[p2];
-                        int[] difference =
-                                IntStream.range(0, markingHistory[0].length).map(index -> markingHistoryP1[index] - markingHistoryP2[index]).toArray();
-                        for (int k = 0; k < markingHistory.length; k++) {
-                            if (!Arrays.equals(markingHistory[k], difference)) {
-                                placeIndicesThatMatchP3.remove(k);
-                            }
-                        }
+                for (int p3 = 0; p3 < placeToRowMap.size(); p3++) {
+                    if (p3 != p1 && p3 != p2 && !removedPlaces.get(p3) && variantOrder.isDifference(p3, p1, p2)) {
+                        implyingPlaceIndices.set(p3);
                     }
                 }
-                if (!placeIndicesThatMatchP3.isEmpty()) {
-                    System.out.println("Place " + placeToRowMap.inverse().get(p1).getLabel() + " is implicit");
-                    placesThatMakeP1implicit.addAll(placeIndicesThatMatchP3.stream().map(index -> placeToRowMap.inverse().get(index)).collect(Collectors.toSet()));
-                }
             }
         }
-        return placesThatMakeP1implicit;
+        return implyingPlaceIndices;
     }
 
     /**
-     * Replays the variants on the Petri net and returns the marking sequences
+     * Finds implicit places like {@link #find()}, but splits the p1 x p2 space across a fork-join pool.
+     * The marking histories are only read, every task collects its own results, and the results are merged when
+     * joining the tasks, so the output does not depend on the scheduling.
      *
-     * @param variants        the variants to be replayed on the net
-     * @param pre             the preincidence matrix of the Petri net on which the replay is performed
-     * @param incidenceMatrix the incidence matrix of the Petri net
-     * @return the marking sequences of the replay as hash map, where the transition sequence is the key and the
-     * marking sequences of the places presented in a matrix is the value. The matrix has a row for every place and a
-     * column for every transition, so one row is the marking history of one particular place.
-     */
-    private HashMap<ArrayList<Transition>, int[][]> replayVariantsOnNet(HashSet<ArrayList<Transition>> variants,
-                                                                        int[][] pre,
-                                                                        int[][] incidenceMatrix) {
-        // initial marking vector
-        int[] m0 = new int[placeToRowMap.size()];
-        this.initialMarking.forEach(p -> m0[placeToRowMap.get(p)]++);
-
-
-        HashMap<ArrayList<Transition>, int[][]> markingSequences = new HashMap<>();
-        for (ArrayList<Transition> trace : variants) {
-            int[] mx = m0;
-            // marking sequences as matrix, where one column holds the marking history of one place
-            int[][] markingSequenceTransposed = new int[trace.size() + 1][petrinet.getPlaces().size()];
+     * @return a set of implicit places in the Petri net
+     */
+    private Set<Place> findInParallel() {
+        int numberOfPlaces = placeToRowMap.size();
+        Map<Integer, BitSet> implyingPlaceIndices =
+                ForkJoinPool.commonPool().invoke(new PairwiseComparisonTask(0, numberOfPlaces, 0, numberOfPlaces));
+
+        for (int p1 = 0; p1 < numberOfPlaces; p1++) {
+            if (implyingPlaceIndices.containsKey(p1)) {
+                System.out.println("Place " + placeToRowMap.inverse().get(p1).getLabel() + " is implicit");
+                foundImplicitPlaces.add(placeToRowMap.inverse().get(p1));
+            }
+        }
+        return foundImplicitPlaces;
+    }
+
+    /**
+     * Finds implicit places like {@link #find()}, but streams over the marking histories block by block and
+     * compares all pairs of places on one block before moving on to the next one. Since only triples that are
+     * consistent with all earlier blocks have to be checked, every block is read once and only needs to be resident
+     * while it is being compared. The resulting candidates are kept, so later calls and added traces reuse them.
+     *
+     * @return a set of implicit places in the Petri net
+     */
+    private Set<Place> findBlockwise() {
+        if (candidates == null) {
+            candidates = refineCandidates(newCandidateTriples(), markingHistories);
+        }
+
+        for (int p1 = 0; p1 < placeToRowMap.size(); p1++) {
+            if (removedPlaces.get(p1) || !candidates.getPlacesImplying(p1).isEmpty()) {
+                System.out.println("Place " + placeToRowMap.inverse().get(p1).getLabel() + " is implicit");
+                foundImplicitPlaces.add(placeToRowMap.inverse().get(p1));
+            }
+        }
+        return foundImplicitPlaces;
+    }
 
-            // add initial marking to marking sequence first:
-            markingSequenceTransposed[0] = mx;
+    /**
+     * Finds implicit places in {@link FindMode#GREEDY}: places are checked one after another, and every implicit place
+     * is removed before the next place is checked, so it is neither used as p2 nor as p3 afterwards. Places removed
+     * by earlier calls stay removed.
+     *
+     * @return all places removed so far
+     */
+    private Set<Place> findGreedily() {
+        if (candidates == null && spillDirectory != null) {
+            candidates = refineCandidates(newCandidateTriples(), markingHistories);
+        }
+
+        for (int p1 = 0; p1 < placeToRowMap.size(); p1++) {
+            if (removedPlaces.get(p1)) {
+                continue;
+            }
+            BitSet implyingPlaceIndices = candidates != null ? candidates.getPlacesImplying(p1)
+                    : getPlaceIndicesImplyingP(p1, 0, placeToRowMap.size());
+            if (!implyingPlaceIndices.isEmpty()) {
+                System.out.println("Place " + placeToRowMap.inverse().get(p1).getLabel() + " is implicit and removed");
+                removePlace(p1, implyingPlaceIndices);
+            }
+        }
+        removedPlaces.stream().forEach(p -> foundImplicitPlaces.add(placeToRowMap.inverse().get(p)));
+        return foundImplicitPlaces;
+    }
 
-            for (int i = 0; i < trace.size(); i++) {
+    /**
+     * Removes an implicit place from all further checks and releases its marking history.
+     */
+    private void removePlace(int p, BitSet implyingPlaceIndices) {
+        removedPlaces.set(p);
+        implyingPlacesOfRemovedPlaces.put(p, implyingPlaceIndices);
+        if (candidates != null) {
+            candidates.removePlace(p);
+        }
+        markingHistories.releasePlace(p);
+    }
 
-                Transition t = trace.get(i);
-                int[] minimumMarking = AlgebraClass.getColumnOfMatrix(pre, transitionToColumnMap.get(t));
+    /**
+     * Compares all places p1 in [p1From, p1To) with all places p2 in [p2From, p2To). The result maps every p1 for
+     * which the task found implying places to the indices of these places.
+     */
+    private class PairwiseComparisonTask extends RecursiveTask<Map<Integer, BitSet>> {
+        private final int p1From;
+        private final int p1To;
+        private final int p2From;
+        private final int p2To;
 
-                // check whether transition is enabled
-                if (AlgebraClass.arrayIsGreaterOrEqualTo(mx, minimumMarking)) {
-                    // fire transition
-                    mx = AlgebraClass.fireTransitionOnIncidenceMatrix(mx, incidenceMatrix,
-                            transitionToColumnMap.get(t));
+        PairwiseComparisonTask(int p1From, int p1To, int p2From, int p2To) {
+            this.p1From = p1From;
+            this.p1To = p1To;
+            this.p2From = p2From;
+            this.p2To = p2To;
+        }
 
-                } else {
-                    System.out.println("Variant does not match Petri net: " + trace);
-                    break;
+        @Override
+        protected Map<Integer, BitSet> compute() {
+            if ((long) (p1To - p1From) * (p2To - p2From) <= PAIRS_PER_TASK) {
+                Map<Integer, BitSet> result = new HashMap<>();
+                for (int p1 = p1From; p1 < p1To; p1++) {
+                    BitSet implyingPlaceIndices = getPlaceIndicesImplyingP(p1, p2From, p2To);
+                    if (!implyingPlaceIndices.isEmpty()) {
+                        result.put(p1, implyingPlaceIndices);
+                    }
                 }
-                markingSequenceTransposed[i + 1] = mx;
+                return result;
             }
-            markingSequences.put(trace, AlgebraClass.transpose(markingSequenceTransposed));
+
+            // split the larger dimension in half
+            PairwiseComparisonTask first;
+            PairwiseComparisonTask second;
+            if (p1To - p1From >= p2To - p2From) {
+                int middle = (p1From + p1To) >>> 1;
+                first = new PairwiseComparisonTask(p1From, middle, p2From, p2To);
+                second = new PairwiseComparisonTask(middle, p1To, p2From, p2To);
+            } else {
+                int middle = (p2From + p2To) >>> 1;
+                first = new PairwiseComparisonTask(p1From, p1To, p2From, middle);
+                second = new PairwiseComparisonTask(p1From, p1To, middle, p2To);
+            }
+            second.fork();
+            Map<Integer, BitSet> result = first.compute();
+            second.join().forEach((p1, implyingPlaceIndices) -> result.merge(p1, implyingPlaceIndices, (a, b) -> {
+                a.or(b);
+                return a;
+            }));
+            return result;
+        }
+    }
+
+    /**
+     * Replays the variants on the Petri net and returns the marking sequences.
+     *
+     * @param variants       the variants to be replayed on the net
+     * @param spillDirectory directory for memory-mapped histories, or null to keep them on the heap
+     * @return the marking sequences of all fitting variants. The store has a row for every place and a column for
+     * every replayed marking, so one row is the marking history of one particular place.
+     */
+    private MarkingHistoryStore replayVariantsOnNet(HashSet<ArrayList<Transition>> variants, Path spillDirectory) {
+        List<int[]> transitionIndexSequences = new ArrayList<>();
+        for (ArrayList<Transition> trace : variants) {
+            transitionIndexSequences.add(trace.stream().mapToInt(transitionToColumnMap::get).toArray());
         }
-        return markingSequences;
+        return VariantReplayer.replay(indexedNet, indexedNet.toMarkingVector(this.initialMarking),
+                transitionIndexSequences, spillDirectory);
     }
 
-    private HashSet<ArrayList<Transition>> extractVariantsFromLogAsTransitionSequences() {
+    private HashSet<ArrayList<Transition>> extractVariantsFromLogAsTransitionSequences(XLog log) {
         // extract variants from log
-        HashSet<ArrayList<String>> variants = extractVariantsFromLog();
+        HashSet<ArrayList<String>> variants = extractVariantsFromLog(log);
 
         // map traces to transition sequences
+        return mapTracesToTransitionSequences(variants,
+                getTransitionLabelsToTransitionMap());
+    }
+
+    private HashMap<String, Transition> getTransitionLabelsToTransitionMap() {
         HashMap<String, Transition> transitionLabelsToTransitionMap = new HashMap<>();
         petrinet.getTransitions().forEach(t -> transitionLabelsToTransitionMap.put(t.getLabel(), t));
-        return mapTracesToTransitionSequences(variants,
-                transitionLabelsToTransitionMap);
+        return transitionLabelsToTransitionMap;
     }
 
-    private static HashSet<ArrayList<Transition>> mapTracesToTransitionSequences(HashSet<ArrayList<String>> variants,
-                                                                                 HashMap<String, Transition> transitionLabelsToTransitionMap) {
+    static HashSet<ArrayList<Transition>> mapTracesToTransitionSequences(HashSet<ArrayList<String>> variants,
+                                                                         HashMap<String, Transition> transitionLabelsToTransitionMap) {
         HashSet<ArrayList<Transition>> transitionSequences = new HashSet<>();
         for (ArrayList<String> v : variants) {
             ArrayList<Transition> transitionseq = new ArrayList<>();
@@ -203,7 +510,7 @@ public class ReplayBasedImplicitPlaceFinder {
         return transitionSequences;
     }
 
-    private HashSet<ArrayList<String>> extractVariantsFromLog() {
+    static HashSet<ArrayList<String>> extractVariantsFromLog(XLog log) {
         HashSet<ArrayList<String>> variants = new HashSet<>();
         for (XTrace trace : log) {
             ArrayList<String> traceAsList = new ArrayList<>();
@@ -0,0 +1,194 @@
+package org.processmining.implicitplaceidentification.algorithms;
+
+import com.google.common.collect.BiMap;
+import org.deckfour.xes.model.XEvent;
+import org.deckfour.xes.model.XLog;
+import org.deckfour.xes.model.XTrace;
+import org.processmining.implicitplaceidentification.algorithms.util.CandidateTriples;
+import org.processmining.implicitplaceidentification.algorithms.util.IndexedPetrinet;
+import org.processmining.implicitplaceidentification.algorithms.util.MarkingHistoryStore;
+import org.processmining.implicitplaceidentification.algorithms.util.VariantReplayer;
+import org.processmining.models.graphbased.directed.petrinet.Petrinet;
+import org.processmining.models.graphbased.directed.petrinet.elements.Place;
+import org.processmining.models.graphbased.directed.petrinet.elements.Transition;
+import org.processmining.models.semantics.petrinet.Marking;
+
+import java.util.*;
+
+/**
+ * This class identifies implicit places like {@link ReplayBasedImplicitPlaceFinder}, but only replays a sample of
+ * the variants of the log. This is meant for logs with a huge number of variants, where most candidate triples
+ * (p1, p2, p3) are already ruled out by the first few hundred variants.
+ * <p>
+ * The variants are replayed in batches, in a random order in which frequent variants tend to come first. Every batch
+ * rules out the triples it contradicts, and the sampling stops once a given number of consecutive batches did not
+ * rule out any triple. Only variants that fit the net are replayed, and batches without any of them are skipped. The
+ * result is therefore not guaranteed to be exact: every found place is reported together with the share of the
+ * variants and traces of the log it has been checked against.
+ */
+public class SamplingReplayBasedImplicitPlaceFinder {
+    private final IndexedPetrinet indexedNet;
+    private final int[] m0;
+    private final int batchSize;
+    private final int stableBatches;
+    private final Random random;
+    /**
+     * all variants that can be mapped to the net as sequences of transition indices, and their frequencies
+     */
+    private final List<int[]> variants = new ArrayList<>();
+    private final List<Integer> frequencies = new ArrayList<>();
+    private final long numberOfTraces;
+    private final Map<Place, Double> implicitPlacesWithCoverage = new HashMap<>();
+    private int numberOfCheckedVariants;
+    private long numberOfCheckedTraces;
+
+    /**
+     * @param petrinet       the Petri net, uniquely labeled and without silent transitions
+     * @param initialMarking the initial marking
+     * @param log            the event log
+     * @param batchSize      the number of variants replayed per batch
+     * @param stableBatches  the number of consecutive batches without any ruled out candidate after which the
+     *                       sampling stops
+     * @param seed           seed for the random order of the variants
+     */
+    public SamplingReplayBasedImplicitPlaceFinder(Petrinet petrinet, Marking initialMarking, XLog log,
+                                                  int batchSize, int stableBatches, long seed) {
+        if (batchSize < 1 || stableBatches < 1) {
+            throw new IllegalArgumentException("Batch size and number of stable batches have to be positive");
+        }
+        this.indexedNet = new IndexedPetrinet(petrinet);
+        this.m0 = indexedNet.toMarkingVector(initialMarking);
+        this.batchSize = batchSize;
+        this.stableBatches = stableBatches;
+        this.random = new Random(seed);
+
+        HashMap<String, Integer> transitionLabelsToIndexMap = new HashMap<>();
+        indexedNet.getTransitionToIndexMap().forEach((t, index) -> transitionLabelsToIndexMap.put(t.getLabel(), index));
+
+        // count the traces per variant
+        HashMap<List<String>, Integer> variantFrequencies = new LinkedHashMap<>();
+        for (XTrace trace : log) {
+            List<String> traceAsList = new ArrayList<>();
+            for (XEvent xEvent : trace) {
+                traceAsList.add(xEvent.getAttributes().get("concept:name").toString());
+            }
+            variantFrequencies.merge(traceAsList, 1, Integer::sum);
+        }
+        numberOfTraces = log.size();
+
+        // map variants to transition sequences, variants with unknown activities cannot be replayed
+        variantFrequencies.forEach((variant, frequency) -> {
+            if (transitionLabelsToIndexMap.keySet().containsAll(variant)) {
+                variants.add(variant.stream().mapToInt(transitionLabelsToIndexMap::get).toArray());
+                frequencies.add(frequency);
+            }
+        });
+    }
+
+    /**
+     * Samples variants until the candidates are stable and returns the places that are implicit with respect to
+     * the sampled variants.
+     *
+     * @return a set of (probably) implicit places in the Petri net
+     */
+    public Set<Place> find() {
+        implicitPlacesWithCoverage.clear();
+        numberOfCheckedVariants = 0;
+        numberOfCheckedTraces = 0;
+
+        List<Integer> order = frequencyWeightedRandomOrder();
+        int numberOfPlaces = indexedNet.getNumberOfPlaces();
+        CandidateTriples candidates = new CandidateTriples(numberOfPlaces);
+        boolean candidatesInitialized = false;
+        int batchesWithoutChange = 0;
+
+        for (int batchStart = 0; batchStart < order.size() && batchesWithoutChange < stableBatches;
+             batchStart += batchSize) {
+            // only variants that fit the net are replayed, so only they count as checked
+            List<int[]> batch = new ArrayList<>();
+            for (int i = batchStart; i < Math.min(order.size(), batchStart + batchSize); i++) {
+                int[] variant = variants.get(order.get(i));
+                if (VariantReplayer.fits(indexedNet, m0, variant)) {
+                    batch.add(variant);
+                    numberOfCheckedTraces += frequencies.get(order.get(i));
+                }
+            }
+            if (batch.isEmpty()) {
+                // a batch without fitting variants has not checked anything, so it does not count as stable either
+                continue;
+            }
+            numberOfCheckedVariants += batch.size();
+
+            try (MarkingHistoryStore histories = VariantReplayer.replay(indexedNet, m0, batch, null)) {
+                // a batch counts as a change as soon as it rules out a single triple, even if the pair (p1, p2) of
+                // the triple still has other candidates. The first batch initializes the candidates, so it always
+                // counts.
+                int ruledOutTriples = candidates.refine(histories, 0, histories.getNumberOfColumns());
+                batchesWithoutChange = ruledOutTriples == 0 && candidatesInitialized ? batchesWithoutChange + 1 : 0;
+                candidatesInitialized = true;
+            }
+        }
+        if (!candidatesInitialized) {
+            System.out.println("No variant of the log fits the net, every place is implicit with coverage 0");
+        }
+
+        BiMap<Integer, Place> indexToPlaceMap = indexedNet.getPlaceToIndexMap().inverse();
+        for (int p1 = 0; p1 < numberOfPlaces; p1++) {
+            if (!candidates.getPlacesImplying(p1).isEmpty()) {
+                System.out.println("Place " + indexToPlaceMap.get(p1).getLabel() + " is implicit, checked against "
+                        + numberOfCheckedVariants + " of " + variants.size() + " variants ("
+                        + numberOfCheckedTraces + " of " + numberOfTraces + " traces)");
+                implicitPlacesWithCoverage.put(indexToPlaceMap.get(p1), getVariantCoverage());
+            }
+        }
+        return implicitPlacesWithCoverage.keySet();
+    }
+
+    /**
+     * @return the places found by the last call of {@link #find()} with the share of variants of the log they have
+     * been checked against. All places of one call have been checked against the same fitting variants.
+     */
+    public Map<Place, Double> getImplicitPlacesWithCoverage() {
+        return implicitPlacesWithCoverage;
+    }
+
+    /**
+     * @return the share of variants of the log that fit the net and have been replayed by the last call of
+     * {@link #find()}
+     */
+    public double getVariantCoverage() {
+        return variants.isEmpty() ? 1 : (double) numberOfCheckedVariants / variants.size();
+    }
+
+    /**
+     * @return the share of traces of the log whose variants fit the net and have been replayed by the last call of
+     * {@link #find()}
+     */
+    public double getTraceCoverage() {
+        return numberOfTraces == 0 ? 1 : (double) numberOfCheckedTraces / numberOfTraces;
+    }
+
+    /**
+     * Draws a random order of the variants in which a variant is more likely to come early the more traces it has
+     * (weighted sampling without replacement with keys u^(1/frequency)).
+     *
+     * @return the indices of the variants in sampling order
+     */
+    private List<Integer> frequencyWeightedRandomOrder() {
+        double[] keys = new double[variants.size()];
+        List<Integer> order = new ArrayList<>();
+        for (int v = 0; v < variants.size(); v++) {
+            keys[v] = Math.log(random.nextDouble()) / frequencies.get(v);
+            order.add(v);
+        }
+        order.sort(Comparator.comparingDouble((Integer v) -> keys[v]).reversed());
+        return order;
+    }
+
+    /**
+     * @return the transitions of the net and their indices in the replayed sequences
+     */
+    public BiMap<Transition, Integer> getTransitionToIndexMap() {
+        return indexedNet.getTransitionToIndexMap();
+    }
+}
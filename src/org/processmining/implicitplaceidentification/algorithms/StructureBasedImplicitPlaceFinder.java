@@ -10,7 +10,10 @@ import org.processmining.models.graphbased.directed.petrinet.elements.Transition
 import org.processmining.models.semantics.petrinet.Marking;
 
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 import java.util.Stack;
 import java.util.stream.Collectors;
@@ -100,8 +103,29 @@ public class StructureBasedImplicitPlaceFinder {
     }
 
     public Set<Place> getPlacesImplyingP(Place place) {
+        return getPlacesImplyingP(place, new ImplicitnessIlp(m0, pre, c));
+    }
+
+    /**
+     * Checks several places like {@link #getPlacesImplyingP(Place)}, e.g. all candidates of a subnet. The matrices
+     * are only computed once per finder, and the parts of the ILP that do not depend on the checked place are only
+     * set up once for all places.
+     *
+     * @param places places of the net
+     * @return per place the places that make it implicit, empty if it is not implicit
+     */
+    public Map<Place, Set<Place>> getPlacesImplyingEachOf(Collection<Place> places) {
+        ImplicitnessIlp ilp = new ImplicitnessIlp(m0, pre, c);
+        Map<Place, Set<Place>> placesImplyingEachPlace = new HashMap<>();
+        for (Place place : places) {
+            placesImplyingEachPlace.put(place, getPlacesImplyingP(place, ilp));
+        }
+        return placesImplyingEachPlace;
+    }
+
+    private Set<Place> getPlacesImplyingP(Place place, ImplicitnessIlp ilp) {
         int p = placeToRowMap.get(place);
-        Result result = solveIlp(m0, pre, c, p);
+        Result result = ilp.solve(p);
 
         HashSet<Place> placesThatMakePimplicit = new HashSet<>();
 
@@ -174,68 +198,89 @@ public class StructureBasedImplicitPlaceFinder {
     }
 
 
-    private static Result solveIlp(int[] m0, int[][] pre, int[][] c, int p) {
-        SolverFactoryLpSolve factory = new SolverFactoryLpSolve();
-        factory.setParameter(Solver.VERBOSE, 0);
-        factory.setParameter(Solver.TIMEOUT, 100); // set timeout to 100 seconds
+    /**
+     * The ILP that decides whether a place is implicit, for the current matrices.
+     * Problem: min (y * m0 + mu)
+     * The objective and the left-hand sides of the constraints y^T * C <= C[p,T] do not depend on the place p, so
+     * they are built once and shared by the problems of all places.
+     */
+    private static class ImplicitnessIlp {
+        private final SolverFactoryLpSolve factory = new SolverFactoryLpSolve();
+        private final int[][] pre;
+        private final int[][] c;
+        private final Linear objective = new Linear();
+        /**
+         * per transition t the linear y^T * C[P,t], and per place i the linear y[i]
+         */
+        private final Linear[] columns;
+        private final Linear[] variables;
 
-        // Problem: min (y * m0 + mu)
+        private ImplicitnessIlp(int[] m0, int[][] pre, int[][] c) {
+            this.pre = pre;
+            this.c = c;
+            factory.setParameter(Solver.VERBOSE, 0);
+            factory.setParameter(Solver.TIMEOUT, 100); // set timeout to 100 seconds
 
-        Problem problem = new Problem();
+            for (int i = 0; i < m0.length; i++) {
+                objective.add(m0[i], "y" + i);
+            }
+            objective.add(1, "mu");
 
-        Linear linear = new Linear();
+            columns = new Linear[c[0].length];
+            for (int column = 0; column < c[0].length; column++) {
+                columns[column] = new Linear();
+                for (int row = 0; row < c.length; row++) {
+                    columns[column].add(c[row][column], "y" + row);
+                }
+            }
 
-        for (int i = 0; i < m0.length; i++) {
-            linear.add(m0[i], "y" + i);
+            variables = new Linear[m0.length];
+            for (int i = 0; i < m0.length; i++) {
+                variables[i] = new Linear();
+                variables[i].add(1, "y" + i);
+            }
         }
-        linear.add(1, "mu");
-
-        problem.setObjective(linear, OptType.MIN);
 
-        // constraint: y^T * C <= C[p,T]
+        private Result solve(int p) {
+            Problem problem = new Problem();
+            problem.setObjective(objective, OptType.MIN);
 
-        for (int column = 0; column < c[0].length; column++) {
-            linear = new Linear();
-            for (int row = 0; row < c.length; row++) {
-                linear.add(c[row][column], "y" + row);
+            // constraint: y^T * C <= C[p,T]
+            for (int column = 0; column < columns.length; column++) {
+                problem.add(columns[column], "<=", c[p][column]);
             }
-            problem.add(linear, "<=", c[p][column]);
-        }
 
-        // constraint: y^T*Pre[P,t] + mu >= Pre[p,t] for all outgoing ts of p
-        linear = new Linear();
-        Stack<Integer> outgoingTransitions = new Stack<>();
-        for (int i = 0; i < pre[p].length; i++) {
-            if (pre[p][i] > 0) {
-                outgoingTransitions.push(i);
+            // constraint: y^T*Pre[P,t] + mu >= Pre[p,t] for all outgoing ts of p
+            Linear linear = new Linear();
+            Stack<Integer> outgoingTransitions = new Stack<>();
+            for (int i = 0; i < pre[p].length; i++) {
+                if (pre[p][i] > 0) {
+                    outgoingTransitions.push(i);
+                }
             }
-        }
 
-        for (int t : outgoingTransitions) {
-            for (int i = 0; i < pre.length; i++) {
-                linear.add(pre[i][t], "y" + i);
+            for (int t : outgoingTransitions) {
+                for (int i = 0; i < pre.length; i++) {
+                    linear.add(pre[i][t], "y" + i);
+                }
+                problem.add(linear, ">=", pre[p][t]);
             }
-            problem.add(linear, ">=", pre[p][t]);
-        }
-
-        // y^T >= 0, y[p] = 0
-        for (int i = 0; i < m0.length; i++) {
-            linear = new Linear();
-            linear.add(1, "y" + i);
 
-            if (i == p) {
-                problem.add(linear, "=", 0);
-            } else {
-                problem.add(linear, ">=", 0);
+            // y^T >= 0, y[p] = 0
+            for (int i = 0; i < variables.length; i++) {
+                if (i == p) {
+                    problem.add(variables[i], "=", 0);
+                } else {
+                    problem.add(variables[i], ">=", 0);
+                }
+                problem.setVarType("y" + i, Integer.class);
             }
-            problem.setVarType("y" + i, Integer.class);
-        }
-
 
-        problem.setVarType("mu", Integer.class);
+            problem.setVarType("mu", Integer.class);
 
-        Solver solver = factory.get();
-        return solver.solve(problem);
+            Solver solver = factory.get();
+            return solver.solve(problem);
+        }
     }
 
     private static Result solveIlpForOnlyStructuralImplicitness(int[][] c, int p) {
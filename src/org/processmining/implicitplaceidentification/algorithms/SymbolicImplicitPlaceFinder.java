@@ -0,0 +1,277 @@
+package org.processmining.implicitplaceidentification.algorithms;
+
+import org.processmining.implicitplaceidentification.algorithms.util.BinaryDecisionDiagrams;
+import org.processmining.implicitplaceidentification.algorithms.util.IndexedPetrinet;
+import org.processmining.models.graphbased.directed.petrinet.Petrinet;
+import org.processmining.models.graphbased.directed.petrinet.elements.Place;
+import org.processmining.models.semantics.petrinet.Marking;
+
+import java.math.BigInteger;
+import java.util.*;
+import java.util.stream.IntStream;
+
+/**
+ * This class identifies implicit places exactly for safe nets, based on a symbolic representation of the reachable
+ * markings as binary decision diagram.
+ * <p>
+ * Every place is a boolean variable. The reachable markings are computed once by image computations per transition,
+ * and a place p is implicit iff no reachable marking enables an output transition of p except for the token in p,
+ * see {@link ReachabilityBasedImplicitPlaceFinder}. All checks share the decision diagrams of one manager, so they
+ * only add the few nodes of their enabling conditions. The size of the diagrams depends on the structure of the net
+ * rather than on the number of reachable markings, which makes nets with large concurrent state spaces feasible.
+ */
+public class SymbolicImplicitPlaceFinder {
+    private final IndexedPetrinet net;
+    private final int[] m0;
+    private FindMode findMode;
+    /**
+     * the variable of each place, places that are connected in the net get close variables
+     */
+    private final int[] variableOfPlace;
+
+    private BinaryDecisionDiagrams diagrams;
+    private int reachableMarkings;
+    private final Map<Place, Set<Place>> witnessMarkings = new HashMap<>();
+
+    public SymbolicImplicitPlaceFinder(Petrinet petrinet, Marking initialMarking, FindMode findMode) {
+        this.net = new IndexedPetrinet(petrinet);
+        this.m0 = net.toMarkingVector(initialMarking);
+        this.findMode = findMode;
+        this.variableOfPlace = computeVariableOrder();
+    }
+
+    /**
+     * @param findMode with {@link FindMode#GREEDY}, every place is checked on the net without the implicit places
+     *                 found before, so all returned places can be removed together
+     */
+    public void setFindMode(FindMode findMode) {
+        this.findMode = findMode;
+    }
+
+    /**
+     * Finds all implicit places of the net.
+     *
+     * @return the implicit places
+     * @throws IllegalArgumentException if the net is not safe
+     */
+    public Set<Place> find() {
+        computeReachableMarkings();
+        witnessMarkings.clear();
+        Set<Place> implicitPlaces = new HashSet<>();
+        BitSet removedPlaces = new BitSet();
+
+        for (int p = 0; p < net.getNumberOfPlaces(); p++) {
+            Place place = net.getPlaceToIndexMap().inverse().get(p);
+            IndexedPetrinet netWithoutRemovedPlaces =
+                    findMode == FindMode.GREEDY ? net.withoutPlaces(removedPlaces) : net;
+            boolean isSink = true;
+            int divergingTransition = -1;
+            int divergingMarkings = BinaryDecisionDiagrams.FALSE;
+            for (int t = 0; t < net.getNumberOfTransitions() && divergingTransition < 0; t++) {
+                int[] inputs = netWithoutRemovedPlaces.getInputPlaces(t);
+                if (contains(inputs, p)) {
+                    isSink = false;
+                    divergingMarkings = getDivergingMarkings(inputs, p);
+                    if (divergingMarkings != BinaryDecisionDiagrams.FALSE) {
+                        divergingTransition = t;
+                    }
+                }
+            }
+
+            if (isSink) {
+                System.out.println("Place " + place.getLabel() + " is not implicit because it is a sink place");
+            } else if (divergingTransition < 0) {
+                System.out.println("Place " + place.getLabel() + " is implicit");
+                implicitPlaces.add(place);
+                removedPlaces.set(p);
+            } else {
+                Set<Place> witnessMarking = toMarkedPlaces(diagrams.findSatisfyingAssignment(divergingMarkings));
+                witnessMarkings.put(place, witnessMarking);
+                System.out.println("Place " + place.getLabel() + " is not implicit because removing it would enable " +
+                        net.getTransitionToIndexMap().inverse().get(divergingTransition).getLabel() +
+                        " in the reachable marking " + labels(witnessMarking));
+            }
+        }
+        return implicitPlaces;
+    }
+
+    /**
+     * @return the number of reachable markings, available after the first call of {@link #find()}
+     */
+    public BigInteger getNumberOfReachableMarkings() {
+        return diagrams == null ? BigInteger.ZERO : diagrams.countSatisfyingAssignments(reachableMarkings);
+    }
+
+    /**
+     * @param place a place of the net
+     * @return the marked places of a reachable marking in which removing the place enables one of its output
+     * transitions, or null if the place is implicit, a sink place or has not been checked by the last call of
+     * {@link #find()}
+     */
+    public Set<Place> getWitnessMarking(Place place) {
+        return witnessMarkings.get(place);
+    }
+
+    /**
+     * @return the reachable markings that mark all inputs except the place, and not the place
+     */
+    private int getDivergingMarkings(int[] inputs, int place) {
+        int[] positive = Arrays.stream(inputs).filter(q -> q != place).map(q -> variableOfPlace[q]).toArray();
+        int enablingCondition = diagrams.cube(positive, new int[]{variableOfPlace[place]});
+        return diagrams.and(reachableMarkings, enablingCondition);
+    }
+
+    /**
+     * @param assignment a satisfying assignment of a set of markings, see
+     *                   {@link BinaryDecisionDiagrams#findSatisfyingAssignment(int)}
+     * @return the marked places of the marking in which the places that can have any value are unmarked
+     */
+    private Set<Place> toMarkedPlaces(int[] assignment) {
+        Set<Place> markedPlaces = new HashSet<>();
+        for (int p = 0; p < net.getNumberOfPlaces(); p++) {
+            if (assignment[variableOfPlace[p]] == 1) {
+                markedPlaces.add(net.getPlaceToIndexMap().inverse().get(p));
+            }
+        }
+        return markedPlaces;
+    }
+
+    private static List<String> labels(Set<Place> places) {
+        List<String> labels = new ArrayList<>();
+        places.forEach(place -> labels.add(place.getLabel()));
+        Collections.sort(labels);
+        return labels;
+    }
+
+    /**
+     * Computes the fixed point of the reachable markings, applying the image of every transition in turn. For a safe
+     * net, t is enabled iff its input places are marked and its other output places are not, and firing it empties
+     * its input places and marks its output places, so its image quantifies these variables and sets them anew.
+     */
+    private void computeReachableMarkings() {
+        if (diagrams != null) {
+            return;
+        }
+        if (Arrays.stream(m0).anyMatch(tokens -> tokens > 1)) {
+            throw new IllegalArgumentException("The net is not safe, the initial marking has more than one token in a " +
+                    "place");
+        }
+        int numberOfTransitions = net.getNumberOfTransitions();
+        BinaryDecisionDiagrams bdd = new BinaryDecisionDiagrams(net.getNumberOfPlaces());
+        int[] enablingConditions = new int[numberOfTransitions];
+        int[] contacts = new int[numberOfTransitions];
+        int[] changedVariables = new int[numberOfTransitions];
+        int[] results = new int[numberOfTransitions];
+        for (int t = 0; t < numberOfTransitions; t++) {
+            checkArcWeights(t);
+            int[] inputs = toVariables(net.getInputPlaces(t));
+            int[] outputs = toVariables(net.getOutputPlaces(t));
+            int[] onlyInputs = Arrays.stream(inputs).filter(v -> !contains(outputs, v)).toArray();
+            int[] onlyOutputs = Arrays.stream(outputs).filter(v -> !contains(inputs, v)).toArray();
+            int inputsMarked = bdd.cube(inputs, new int[0]);
+            int contact = BinaryDecisionDiagrams.FALSE;
+            for (int v : onlyOutputs) {
+                contact = bdd.or(contact, bdd.variable(v));
+            }
+            contacts[t] = bdd.and(inputsMarked, contact);
+            enablingConditions[t] = bdd.cube(inputs, onlyOutputs);
+            changedVariables[t] = bdd.cube(concat(onlyInputs, onlyOutputs), new int[0]);
+            results[t] = bdd.cube(onlyOutputs, onlyInputs);
+        }
+
+        int reachable = bdd.cube(toVariables(marked(m0)), toVariables(unmarked(m0)));
+        int previous;
+        do {
+            previous = reachable;
+            for (int t = 0; t < numberOfTransitions; t++) {
+                if (bdd.and(reachable, contacts[t]) != BinaryDecisionDiagrams.FALSE) {
+                    throw new IllegalArgumentException("The net is not safe, firing " +
+                            net.getTransitionToIndexMap().inverse().get(t).getLabel() +
+                            " can put a second token into a place");
+                }
+                int image = bdd.and(bdd.andExists(reachable, enablingConditions[t], changedVariables[t]), results[t]);
+                reachable = bdd.or(reachable, image);
+            }
+        } while (reachable != previous);
+        diagrams = bdd;
+        reachableMarkings = reachable;
+    }
+
+    private void checkArcWeights(int t) {
+        int[] inputWeights = net.getInputWeights(t);
+        int[] outputWeights = net.getOutputWeights(t);
+        if (Arrays.stream(inputWeights).anyMatch(w -> w != 1) || Arrays.stream(outputWeights).anyMatch(w -> w != 1)) {
+            throw new IllegalArgumentException("The net is not safe, " +
+                    net.getTransitionToIndexMap().inverse().get(t).getLabel() + " has arcs with weight other than 1");
+        }
+    }
+
+    /**
+     * Orders the places by a depth-first search from the initially marked places along the arcs of the net, so that
+     * the places of a sequential part of the net are next to each other.
+     */
+    private int[] computeVariableOrder() {
+        int numberOfPlaces = net.getNumberOfPlaces();
+        List<List<Integer>> successors = new ArrayList<>(numberOfPlaces);
+        for (int p = 0; p < numberOfPlaces; p++) {
+            successors.add(new ArrayList<>());
+        }
+        for (int t = 0; t < net.getNumberOfTransitions(); t++) {
+            for (int p : net.getInputPlaces(t)) {
+                for (int q : net.getOutputPlaces(t)) {
+                    successors.get(p).add(q);
+                }
+            }
+        }
+
+        int[] order = new int[numberOfPlaces];
+        Arrays.fill(order, -1);
+        int next = 0;
+        Deque<Integer> stack = new ArrayDeque<>();
+        int[] roots = concat(marked(m0), unmarked(m0));
+        for (int root : roots) {
+            stack.push(root);
+            while (!stack.isEmpty()) {
+                int p = stack.pop();
+                if (order[p] >= 0) {
+                    continue;
+                }
+                order[p] = next++;
+                List<Integer> successorsOfP = successors.get(p);
+                for (int i = successorsOfP.size() - 1; i >= 0; i--) {
+                    if (order[successorsOfP.get(i)] < 0) {
+                        stack.push(successorsOfP.get(i));
+                    }
+                }
+            }
+        }
+        return order;
+    }
+
+    private int[] toVariables(int[] places) {
+        return Arrays.stream(places).map(p -> variableOfPlace[p]).toArray();
+    }
+
+    private static int[] marked(int[] m) {
+        return IntStream.range(0, m.length).filter(p -> m[p] > 0).toArray();
+    }
+
+    private static int[] unmarked(int[] m) {
+        return IntStream.range(0, m.length).filter(p -> m[p] == 0).toArray();
+    }
+
+    private static int[] concat(int[] a, int[] b) {
+        int[] result = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, result, a.length, b.length);
+        return result;
+    }
+
+    private static boolean contains(int[] array, int value) {
+        for (int element : array) {
+            if (element == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
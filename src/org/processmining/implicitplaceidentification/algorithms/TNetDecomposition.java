@@ -3,11 +3,14 @@ package org.processmining.implicitplaceidentification.algorithms;
 import org.processmining.models.graphbased.AbstractGraphEdge;
 import org.processmining.models.graphbased.AttributeMap;
 import org.processmining.models.graphbased.directed.petrinet.Petrinet;
+import org.processmining.models.graphbased.directed.petrinet.PetrinetEdge;
 import org.processmining.models.graphbased.directed.petrinet.PetrinetNode;
 import org.processmining.models.graphbased.directed.petrinet.elements.Place;
 import org.processmining.models.graphbased.directed.petrinet.elements.Transition;
 
 import java.awt.*;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Random;
@@ -59,27 +62,30 @@ public class TNetDecomposition {
         return succeedingPlaces;
     }
 
+    /**
+     * Adds the nodes of the t-net induced by t, with an explicit stack so that long sequences cannot overflow the call
+     * stack.
+     */
     private static void addTNetNodes(Petrinet net, Transition t, HashSet<PetrinetNode> tNetNodes) {
+        Deque<Transition> transitionsToVisit = new ArrayDeque<>();
+        transitionsToVisit.push(t);
+        while (!transitionsToVisit.isEmpty()) {
+            Transition transition = transitionsToVisit.pop();
+            // add t
+            if (!tNetNodes.add(transition)) {
+                continue;
+            }
 
-        if (tNetNodes.contains(t)) {
-            return;
-        }
-        
-        // add t
-        tNetNodes.add(t);
-
-        // add all output places of t that have exactly 1 in- and 1 outgoing transition
-        List<PetrinetNode> outputPlacesFiltered = net.getOutEdges(t).stream().map(AbstractGraphEdge::getTarget)
-                .filter(pc -> net.getOutEdges(pc).size() == 1 && net.getInEdges(pc).size() == 1)
-                .collect(Collectors.toList());
-
-        for (PetrinetNode p : outputPlacesFiltered) {
-            tNetNodes.add(p);
-            // for every output place, all outgoing transitions are in t-net (recursive)
-            List<PetrinetNode> outgoingTransitions =
-                    net.getOutEdges(p).stream().map(AbstractGraphEdge::getTarget).collect(Collectors.toList());
-            for (PetrinetNode outT : outgoingTransitions) {
-                addTNetNodes(net, (Transition) outT, tNetNodes);
+            // add all output places of t that have exactly 1 in- and 1 outgoing transition
+            for (PetrinetEdge<?, ?> outEdge : net.getOutEdges(transition)) {
+                PetrinetNode p = outEdge.getTarget();
+                if (net.getOutEdges(p).size() == 1 && net.getInEdges(p).size() == 1) {
+                    tNetNodes.add(p);
+                    // for every output place, all outgoing transitions are in t-net
+                    for (PetrinetEdge<?, ?> edge : net.getOutEdges(p)) {
+                        transitionsToVisit.push((Transition) edge.getTarget());
+                    }
+                }
             }
             // TODO do this, also check about completeness (maximal t-nets required? -> can I skip all t-nets that are
             //  subnets of another t-net? Are those even t-nets?
@@ -0,0 +1,99 @@
+package org.processmining.implicitplaceidentification.algorithms.util;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Compares marking histories variant by variant, in an order that adapts to the comparisons made so far.
+ * Most pairs of places that are compared are not related, and a comparison can stop at the first variant that
+ * disproves it. The order is shared by all comparisons: variants that disproved many comparisons per marking move to
+ * the front, so later comparisons are rejected after reading only a few short, informative variants. Before anything
+ * has been rejected, the variants are ordered by length.
+ * <p>
+ * The order is only a heuristic and does not change the results. It can be used concurrently: rejections are counted
+ * atomically and a new order is published as a whole.
+ */
+public class AdaptiveVariantOrder {
+    private final MarkingHistoryStore histories;
+    /**
+     * number of comparisons disproved by every variant
+     */
+    private final AtomicIntegerArray rejections;
+    private final AtomicInteger rejectionsSinceReordering = new AtomicInteger();
+    /**
+     * number of rejections after which the variants are reordered, so sorting stays cheap compared to the comparisons
+     */
+    private final int reorderingInterval;
+    private volatile int[] order;
+
+    public AdaptiveVariantOrder(MarkingHistoryStore histories) {
+        this.histories = histories;
+        int numberOfVariants = histories.getNumberOfVariants();
+        this.rejections = new AtomicIntegerArray(numberOfVariants);
+        this.reorderingInterval = Math.max(64, numberOfVariants);
+        reorder();
+    }
+
+    /**
+     * @return true if the marking history of p1 is greater or equal to the marking history of p2 in every column
+     */
+    public boolean isGreaterOrEqual(int p1, int p2) {
+        for (int variant : order) {
+            if (!histories.isGreaterOrEqual(p1, p2, histories.getVariantStart(variant),
+                    histories.getVariantEnd(variant))) {
+                recordRejection(variant);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return true if the marking history of p3 equals the marking history of p1 minus the one of p2 in every column
+     */
+    public boolean isDifference(int p3, int p1, int p2) {
+        for (int variant : order) {
+            if (!histories.isDifference(p3, p1, p2, histories.getVariantStart(variant),
+                    histories.getVariantEnd(variant))) {
+                recordRejection(variant);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the indices of the variants in the current order of comparison
+     */
+    public int[] getOrder() {
+        return order.clone();
+    }
+
+    private void recordRejection(int variant) {
+        rejections.incrementAndGet(variant);
+        if (rejectionsSinceReordering.incrementAndGet() >= reorderingInterval) {
+            rejectionsSinceReordering.set(0);
+            reorder();
+        }
+    }
+
+    /**
+     * Sorts the variants by the number of rejections per marking, descending. Variants without rejections keep
+     * being sorted by length, shortest first.
+     */
+    private void reorder() {
+        int numberOfVariants = rejections.length();
+        double[] scores = new double[numberOfVariants];
+        Integer[] variants = new Integer[numberOfVariants];
+        for (int v = 0; v < numberOfVariants; v++) {
+            int length = histories.getVariantEnd(v) - histories.getVariantStart(v);
+            // +1, so that shorter variants come first among the ones that have not rejected anything yet
+            scores[v] = (rejections.get(v) + 1) / (double) length;
+            variants[v] = v;
+        }
+        Arrays.sort(variants, Comparator.comparingDouble((Integer v) -> scores[v]).reversed());
+        order = Arrays.stream(variants).mapToInt(Integer::intValue).toArray();
+    }
+}
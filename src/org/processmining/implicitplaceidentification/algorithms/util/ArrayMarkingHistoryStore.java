@@ -0,0 +1,134 @@
+package org.processmining.implicitplaceidentification.algorithms.util;
+
+/**
+ * Keeps all marking histories on the heap, place-major with one array per place.
+ * Markings are packed into bytes or shorts if the largest observed number of tokens allows it.
+ */
+public class ArrayMarkingHistoryStore extends MarkingHistoryStore {
+    /**
+     * one row per place, only one of the arrays is used, depending on the largest value that has to be stored.
+     * A row is null if the place has been released.
+     */
+    private final byte[][] byteValues;
+    private final short[][] shortValues;
+    private final int[][] intValues;
+
+    /**
+     * Creates an empty store.
+     *
+     * @param numberOfPlaces    the number of places (rows)
+     * @param variantLengths    the number of columns (markings) of every variant
+     * @param maxNumberOfTokens the largest number of tokens that will be stored
+     */
+    public ArrayMarkingHistoryStore(int numberOfPlaces, int[] variantLengths, int maxNumberOfTokens) {
+        super(numberOfPlaces, variantLengths);
+        int bytesPerValue = bytesPerValue(maxNumberOfTokens);
+        byteValues = bytesPerValue == Byte.BYTES ? new byte[numberOfPlaces][numberOfColumns] : null;
+        shortValues = bytesPerValue == Short.BYTES ? new short[numberOfPlaces][numberOfColumns] : null;
+        intValues = bytesPerValue == Integer.BYTES ? new int[numberOfPlaces][numberOfColumns] : null;
+    }
+
+    @Override
+    public void setColumn(int column, int[] marking) {
+        for (int p = 0; p < numberOfPlaces; p++) {
+            if (byteValues != null) {
+                if (byteValues[p] != null) {
+                    byteValues[p][column] = (byte) marking[p];
+                }
+            } else if (shortValues != null) {
+                if (shortValues[p] != null) {
+                    shortValues[p][column] = (short) marking[p];
+                }
+            } else if (intValues[p] != null) {
+                intValues[p][column] = marking[p];
+            }
+        }
+    }
+
+    @Override
+    public int get(int place, int column) {
+        if (byteValues != null) {
+            return byteValues[place][column];
+        } else if (shortValues != null) {
+            return shortValues[place][column];
+        }
+        return intValues[place][column];
+    }
+
+    /**
+     * Drops the history of the place, so its memory can be reclaimed.
+     */
+    @Override
+    public void releasePlace(int place) {
+        if (byteValues != null) {
+            byteValues[place] = null;
+        } else if (shortValues != null) {
+            shortValues[place] = null;
+        } else {
+            intValues[place] = null;
+        }
+    }
+
+    @Override
+    public boolean isGreaterOrEqual(int p1, int p2, int from, int to) {
+        if (byteValues != null) {
+            byte[] row1 = byteValues[p1];
+            byte[] row2 = byteValues[p2];
+            for (int i = from; i < to; i++) {
+                if (row1[i] < row2[i]) {
+                    return false;
+                }
+            }
+        } else if (shortValues != null) {
+            short[] row1 = shortValues[p1];
+            short[] row2 = shortValues[p2];
+            for (int i = from; i < to; i++) {
+                if (row1[i] < row2[i]) {
+                    return false;
+                }
+            }
+        } else {
+            int[] row1 = intValues[p1];
+            int[] row2 = intValues[p2];
+            for (int i = from; i < to; i++) {
+                if (row1[i] < row2[i]) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean isDifference(int p3, int p1, int p2, int from, int to) {
+        if (byteValues != null) {
+            byte[] row1 = byteValues[p1];
+            byte[] row2 = byteValues[p2];
+            byte[] row3 = byteValues[p3];
+            for (int i = from; i < to; i++) {
+                if (row3[i] != row1[i] - row2[i]) {
+                    return false;
+                }
+            }
+        } else if (shortValues != null) {
+            short[] row1 = shortValues[p1];
+            short[] row2 = shortValues[p2];
+            short[] row3 = shortValues[p3];
+            for (int i = from; i < to; i++) {
+                if (row3[i] != row1[i] - row2[i]) {
+                    return false;
+                }
+            }
+        } else {
+            int[] row1 = intValues[p1];
+            int[] row2 = intValues[p2];
+            int[] row3 = intValues[p3];
+            for (int i = from; i < to; i++) {
+                if (row3[i] != row1[i] - row2[i]) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+}
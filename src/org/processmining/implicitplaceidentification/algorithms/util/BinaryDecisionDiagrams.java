@@ -0,0 +1,367 @@
+package org.processmining.implicitplaceidentification.algorithms.util;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A manager of reduced ordered binary decision diagrams over a fixed number of boolean variables, ordered by their
+ * index. A diagram is represented by the int id of its root node, {@link #FALSE} and {@link #TRUE} are the
+ * terminals. Nodes are hash-consed in a unique table, so equal functions have equal ids and all diagrams of a manager
+ * share their common subgraphs. The results of operations are kept in a lossy cache of fixed size. Nodes are never
+ * freed, the memory of a manager grows with the number of distinct nodes that have been created.
+ */
+public class BinaryDecisionDiagrams {
+    public static final int FALSE = 0;
+    public static final int TRUE = 1;
+
+    private static final int EMPTY = -1;
+    private static final int AND = 0;
+    private static final int OR = 1;
+    private static final int EXISTS = 2;
+    private static final int AND_EXISTS = 3;
+
+    private final int numberOfVariables;
+    /**
+     * per node its variable, numberOfVariables for the terminals, and its low and high successors
+     */
+    private int[] variables;
+    private int[] lows;
+    private int[] highs;
+    private int size;
+    /**
+     * the unique table, the ids of the nodes by their hash, EMPTY for free slots. The length is a power of two.
+     */
+    private int[] slots;
+    /**
+     * the operation cache, per entry the operation, its three operands and its result
+     */
+    private final int[] cache;
+    private final int cacheMask;
+
+    /**
+     * @param numberOfVariables the number of variables
+     * @param log2CacheSize     the binary logarithm of the number of entries of the operation cache
+     */
+    public BinaryDecisionDiagrams(int numberOfVariables, int log2CacheSize) {
+        if (numberOfVariables < 0 || log2CacheSize < 1 || log2CacheSize > 24) {
+            throw new IllegalArgumentException("Invalid number of variables or cache size");
+        }
+        this.numberOfVariables = numberOfVariables;
+        variables = new int[1024];
+        lows = new int[1024];
+        highs = new int[1024];
+        slots = new int[2048];
+        Arrays.fill(slots, EMPTY);
+        cache = new int[5 << log2CacheSize];
+        Arrays.fill(cache, EMPTY);
+        cacheMask = (1 << log2CacheSize) - 1;
+        for (int terminal = FALSE; terminal <= TRUE; terminal++) {
+            variables[terminal] = numberOfVariables;
+            lows[terminal] = terminal;
+            highs[terminal] = terminal;
+        }
+        size = 2;
+    }
+
+    public BinaryDecisionDiagrams(int numberOfVariables) {
+        this(numberOfVariables, 20);
+    }
+
+    public int getNumberOfVariables() {
+        return numberOfVariables;
+    }
+
+    /**
+     * @param variable the index of a variable
+     * @return the diagram that is true iff the variable is true
+     */
+    public int variable(int variable) {
+        return makeNode(variable, FALSE, TRUE);
+    }
+
+    /**
+     * @param positive variables that have to be true
+     * @param negative variables that have to be false
+     * @return the conjunction of the literals
+     */
+    public int cube(int[] positive, int[] negative) {
+        int[] literals = new int[numberOfVariables];
+        for (int v : positive) {
+            literals[v] = 1;
+        }
+        for (int v : negative) {
+            if (literals[v] == 1) {
+                return FALSE;
+            }
+            literals[v] = -1;
+        }
+        int result = TRUE;
+        for (int v = numberOfVariables - 1; v >= 0; v--) {
+            if (literals[v] > 0) {
+                result = makeNode(v, FALSE, result);
+            } else if (literals[v] < 0) {
+                result = makeNode(v, result, FALSE);
+            }
+        }
+        return result;
+    }
+
+    public int and(int a, int b) {
+        if (a == FALSE || b == FALSE) {
+            return FALSE;
+        }
+        if (a == TRUE || a == b) {
+            return b;
+        }
+        if (b == TRUE) {
+            return a;
+        }
+        if (a > b) {
+            int swap = a;
+            a = b;
+            b = swap;
+        }
+        int cached = lookup(AND, a, b, 0);
+        if (cached != EMPTY) {
+            return cached;
+        }
+        int v = Math.min(variables[a], variables[b]);
+        int result = makeNode(v, and(low(a, v), low(b, v)), and(high(a, v), high(b, v)));
+        store(AND, a, b, 0, result);
+        return result;
+    }
+
+    public int or(int a, int b) {
+        if (a == TRUE || b == TRUE) {
+            return TRUE;
+        }
+        if (a == FALSE || a == b) {
+            return b;
+        }
+        if (b == FALSE) {
+            return a;
+        }
+        if (a > b) {
+            int swap = a;
+            a = b;
+            b = swap;
+        }
+        int cached = lookup(OR, a, b, 0);
+        if (cached != EMPTY) {
+            return cached;
+        }
+        int v = Math.min(variables[a], variables[b]);
+        int result = makeNode(v, or(low(a, v), low(b, v)), or(high(a, v), high(b, v)));
+        store(OR, a, b, 0, result);
+        return result;
+    }
+
+    /**
+     * @param a         a diagram
+     * @param variables a cube of positive literals, see {@link #cube(int[], int[])}
+     * @return the diagram with the variables of the cube existentially quantified
+     */
+    public int exists(int a, int variables) {
+        variables = skipVariablesAbove(variables, this.variables[a]);
+        if (a <= TRUE || variables == TRUE) {
+            return a;
+        }
+        int cached = lookup(EXISTS, a, variables, 0);
+        if (cached != EMPTY) {
+            return cached;
+        }
+        int v = this.variables[a];
+        int result;
+        if (this.variables[variables] == v) {
+            result = or(exists(lows[a], highs[variables]), exists(highs[a], highs[variables]));
+        } else {
+            result = makeNode(v, exists(lows[a], variables), exists(highs[a], variables));
+        }
+        store(EXISTS, a, variables, 0, result);
+        return result;
+    }
+
+    /**
+     * Computes the conjunction of two diagrams and quantifies variables in one pass, without building the conjunction.
+     *
+     * @param variables a cube of positive literals, see {@link #cube(int[], int[])}
+     * @return the conjunction of a and b with the variables of the cube existentially quantified
+     */
+    public int andExists(int a, int b, int variables) {
+        if (a == FALSE || b == FALSE) {
+            return FALSE;
+        }
+        if (a == TRUE && b == TRUE) {
+            return TRUE;
+        }
+        if (a == TRUE || a == b) {
+            return exists(b, variables);
+        }
+        if (b == TRUE) {
+            return exists(a, variables);
+        }
+        if (a > b) {
+            int swap = a;
+            a = b;
+            b = swap;
+        }
+        int v = Math.min(this.variables[a], this.variables[b]);
+        variables = skipVariablesAbove(variables, v);
+        if (variables == TRUE) {
+            return and(a, b);
+        }
+        int cached = lookup(AND_EXISTS, a, b, variables);
+        if (cached != EMPTY) {
+            return cached;
+        }
+        int result;
+        if (this.variables[variables] == v) {
+            int low = andExists(low(a, v), low(b, v), highs[variables]);
+            result = low == TRUE ? TRUE : or(low, andExists(high(a, v), high(b, v), highs[variables]));
+        } else {
+            result = makeNode(v, andExists(low(a, v), low(b, v), variables),
+                    andExists(high(a, v), high(b, v), variables));
+        }
+        store(AND_EXISTS, a, b, variables, result);
+        return result;
+    }
+
+    /**
+     * @return the number of assignments of all variables that satisfy the diagram
+     */
+    public BigInteger countSatisfyingAssignments(int a) {
+        return countSatisfyingAssignments(a, new HashMap<>()).shiftLeft(variables[a]);
+    }
+
+    /**
+     * @return the number of assignments of the variables from the variable of the node on that satisfy it
+     */
+    private BigInteger countSatisfyingAssignments(int a, Map<Integer, BigInteger> counts) {
+        if (a <= TRUE) {
+            return BigInteger.valueOf(a);
+        }
+        BigInteger count = counts.get(a);
+        if (count == null) {
+            int v = variables[a];
+            count = countSatisfyingAssignments(lows[a], counts).shiftLeft(variables[lows[a]] - v - 1)
+                    .add(countSatisfyingAssignments(highs[a], counts).shiftLeft(variables[highs[a]] - v - 1));
+            counts.put(a, count);
+        }
+        return count;
+    }
+
+    /**
+     * @return one assignment that satisfies the diagram, with -1 for variables that can have any value, or null if the
+     * diagram is {@link #FALSE}
+     */
+    public int[] findSatisfyingAssignment(int a) {
+        if (a == FALSE) {
+            return null;
+        }
+        int[] assignment = new int[numberOfVariables];
+        Arrays.fill(assignment, -1);
+        while (a != TRUE) {
+            if (lows[a] != FALSE) {
+                assignment[variables[a]] = 0;
+                a = lows[a];
+            } else {
+                assignment[variables[a]] = 1;
+                a = highs[a];
+            }
+        }
+        return assignment;
+    }
+
+    private int low(int a, int variable) {
+        return variables[a] == variable ? lows[a] : a;
+    }
+
+    private int high(int a, int variable) {
+        return variables[a] == variable ? highs[a] : a;
+    }
+
+    private int skipVariablesAbove(int cube, int variable) {
+        while (variables[cube] < variable) {
+            cube = highs[cube];
+        }
+        return cube;
+    }
+
+    private int makeNode(int variable, int low, int high) {
+        if (low == high) {
+            return low;
+        }
+        int mask = slots.length - 1;
+        int slot = hash(variable, low, high) & mask;
+        for (int id = slots[slot]; id != EMPTY; id = slots[slot]) {
+            if (variables[id] == variable && lows[id] == low && highs[id] == high) {
+                return id;
+            }
+            slot = (slot + 1) & mask;
+        }
+        if (size == variables.length) {
+            grow();
+            return makeNode(variable, low, high);
+        }
+        variables[size] = variable;
+        lows[size] = low;
+        highs[size] = high;
+        slots[slot] = size;
+        return size++;
+    }
+
+    /**
+     * Doubles the capacity, the unique table always has at least twice as many slots as nodes.
+     */
+    private void grow() {
+        int capacity = variables.length * 2;
+        if (capacity > 1 << 30) {
+            throw new IllegalStateException("Too many decision diagram nodes: " + size);
+        }
+        variables = Arrays.copyOf(variables, capacity);
+        lows = Arrays.copyOf(lows, capacity);
+        highs = Arrays.copyOf(highs, capacity);
+        slots = new int[capacity * 2];
+        Arrays.fill(slots, EMPTY);
+        int mask = slots.length - 1;
+        for (int id = TRUE + 1; id < size; id++) {
+            int slot = hash(variables[id], lows[id], highs[id]) & mask;
+            while (slots[slot] != EMPTY) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = id;
+        }
+    }
+
+    private int lookup(int operation, int a, int b, int c) {
+        int entry = 5 * (hash(operation, a, b, c) & cacheMask);
+        if (cache[entry] == operation && cache[entry + 1] == a && cache[entry + 2] == b && cache[entry + 3] == c) {
+            return cache[entry + 4];
+        }
+        return EMPTY;
+    }
+
+    private void store(int operation, int a, int b, int c, int result) {
+        int entry = 5 * (hash(operation, a, b, c) & cacheMask);
+        cache[entry] = operation;
+        cache[entry + 1] = a;
+        cache[entry + 2] = b;
+        cache[entry + 3] = c;
+        cache[entry + 4] = result;
+    }
+
+    private static int hash(int a, int b, int c) {
+        return hash(a, b, c, 0);
+    }
+
+    private static int hash(int a, int b, int c, int d) {
+        long h = a * 0x9E3779B97F4A7C15L + b;
+        h = h * 0x9E3779B97F4A7C15L + c;
+        h = h * 0x9E3779B97F4A7C15L + d;
+        h ^= h >>> 31;
+        h *= 0xBF58476D1CE4E5B9L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
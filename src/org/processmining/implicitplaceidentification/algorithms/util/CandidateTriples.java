@@ -0,0 +1,176 @@
+package org.processmining.implicitplaceidentification.algorithms.util;
+
+import java.util.BitSet;
+
+/**
+ * Keeps track of the triples (p1, p2, p3) of place indices with p1 = p2 + p3 that are consistent with all marking
+ * histories seen so far. Histories are fed in column ranges (e.g. block by block or variant by variant), and every
+ * range can only rule out triples, so the candidates can be refined without looking at earlier histories again.
+ * Rows (places p1) are independent of each other and can be refined concurrently.
+ * Places can be removed, e.g. when they are removed from the net, after which they are neither checked nor used in
+ * any triple.
+ */
+public class CandidateTriples {
+    /**
+     * shared row of all places p1 whose pairs have all been ruled out, so such rows do not take up any memory
+     */
+    private static final BitSet[] NO_CANDIDATES = new BitSet[0];
+
+    private final int numberOfPlaces;
+    /**
+     * per p1 and p2 the set of candidates for p3. A missing row has not been refined yet, so every triple of the
+     * row is still a candidate. A missing p3-set, or a row of length 0, means that the pair (p1, p2) has been ruled
+     * out.
+     */
+    private final BitSet[][] rows;
+    private final BitSet removedPlaces = new BitSet();
+
+    public CandidateTriples(int numberOfPlaces) {
+        this.numberOfPlaces = numberOfPlaces;
+        this.rows = new BitSet[numberOfPlaces][];
+    }
+
+    /**
+     * Removes all triples that contain the place. Its marking history is not read anymore by later refinements.
+     * Must not be called concurrently with {@link #refine(MarkingHistoryStore, int, int, int)}.
+     *
+     * @param place index of the place
+     */
+    public void removePlace(int place) {
+        removedPlaces.set(place);
+        rows[place] = null;
+        for (BitSet[] row : rows) {
+            if (row == null || row == NO_CANDIDATES) {
+                continue;
+            }
+            row[place] = null;
+            for (int p2 = 0; p2 < numberOfPlaces; p2++) {
+                if (row[p2] != null) {
+                    row[p2].clear(place);
+                    if (row[p2].isEmpty()) {
+                        row[p2] = null;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes all triples of p1 that contradict the marking histories in the given column range.
+     *
+     * @param histories the marking histories
+     * @param p1        index of the place whose triples are refined
+     * @param from      first column (inclusive)
+     * @param to        last column (exclusive)
+     * @return the number of triples (p1, p2, p3) that have been ruled out, also those of pairs (p1, p2) that still
+     * have other candidates for p3
+     */
+    public int refine(MarkingHistoryStore histories, int p1, int from, int to) {
+        if (removedPlaces.get(p1)) {
+            return 0;
+        }
+        int ruledOut = 0;
+        BitSet[] row = rows[p1];
+        if (row == null) {
+            // before the first refinement, every place other than p1, p2 and the removed places is a candidate for p3
+            int numberOfRemainingPlaces = numberOfPlaces - removedPlaces.cardinality() - 1;
+            row = new BitSet[numberOfPlaces];
+            for (int p2 = 0; p2 < numberOfPlaces; p2++) {
+                if (p1 == p2 || removedPlaces.get(p2)) {
+                    continue;
+                }
+                BitSet placeIndicesThatMatchP3 = null;
+                if (histories.isGreaterOrEqual(p1, p2, from, to)) {
+                    placeIndicesThatMatchP3 = new BitSet(numberOfPlaces);
+                    for (int p3 = 0; p3 < numberOfPlaces; p3++) {
+                        if (p3 != p1 && p3 != p2 && !removedPlaces.get(p3)
+                                && histories.isDifference(p3, p1, p2, from, to)) {
+                            placeIndicesThatMatchP3.set(p3);
+                        }
+                    }
+                }
+                if (placeIndicesThatMatchP3 == null || placeIndicesThatMatchP3.isEmpty()) {
+                    ruledOut += numberOfRemainingPlaces - 1;
+                } else {
+                    ruledOut += numberOfRemainingPlaces - 1 - placeIndicesThatMatchP3.cardinality();
+                    row[p2] = placeIndicesThatMatchP3;
+                }
+            }
+            rows[p1] = isEmpty(row) ? NO_CANDIDATES : row;
+            return ruledOut;
+        }
+
+        for (int p2 = 0; p2 < row.length; p2++) {
+            BitSet placeIndicesThatMatchP3 = row[p2];
+            if (placeIndicesThatMatchP3 == null) {
+                continue;
+            }
+            if (histories.isGreaterOrEqual(p1, p2, from, to)) {
+                for (int p3 = placeIndicesThatMatchP3.nextSetBit(0); p3 >= 0;
+                     p3 = placeIndicesThatMatchP3.nextSetBit(p3 + 1)) {
+                    if (!histories.isDifference(p3, p1, p2, from, to)) {
+                        placeIndicesThatMatchP3.clear(p3);
+                        ruledOut++;
+                    }
+                }
+            } else {
+                ruledOut += placeIndicesThatMatchP3.cardinality();
+                placeIndicesThatMatchP3.clear();
+            }
+            if (placeIndicesThatMatchP3.isEmpty()) {
+                row[p2] = null;
+            }
+        }
+        if (row != NO_CANDIDATES && isEmpty(row)) {
+            rows[p1] = NO_CANDIDATES;
+        }
+        return ruledOut;
+    }
+
+    private static boolean isEmpty(BitSet[] row) {
+        for (BitSet placeIndicesThatMatchP3 : row) {
+            if (placeIndicesThatMatchP3 != null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Removes all triples that contradict the marking histories in the given column range.
+     *
+     * @return the number of triples that have been ruled out
+     */
+    public int refine(MarkingHistoryStore histories, int from, int to) {
+        int ruledOut = 0;
+        for (int p1 = 0; p1 < numberOfPlaces; p1++) {
+            ruledOut += refine(histories, p1, from, to);
+        }
+        return ruledOut;
+    }
+
+    /**
+     * @param p1 index of a place
+     * @return the indices of all places p3 of the remaining triples of p1. Since p1 = p2 + p3 implies that (p1, p3,
+     * p2) is a triple as well, these are also all places p2. Empty if p1 has been removed.
+     */
+    public BitSet getPlacesImplying(int p1) {
+        BitSet implyingPlaceIndices = new BitSet(numberOfPlaces);
+        if (removedPlaces.get(p1)) {
+            return implyingPlaceIndices;
+        }
+        BitSet[] row = rows[p1];
+        if (row == null) {
+            implyingPlaceIndices.set(0, numberOfPlaces);
+            implyingPlaceIndices.andNot(removedPlaces);
+            implyingPlaceIndices.clear(p1);
+            return implyingPlaceIndices;
+        }
+        for (int p2 = 0; p2 < row.length; p2++) {
+            if (row[p2] != null) {
+                implyingPlaceIndices.or(row[p2]);
+            }
+        }
+        return implyingPlaceIndices;
+    }
+}
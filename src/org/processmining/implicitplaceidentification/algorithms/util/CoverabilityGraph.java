@@ -0,0 +1,206 @@
+package org.processmining.implicitplaceidentification.algorithms.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * A Karp-Miller coverability tree of a net, built by a breadth-first search. A node whose marking strictly covers the
+ * marking of one of its ancestors gets {@link #OMEGA} in the places that have grown, since the transitions in between
+ * can be repeated to put arbitrarily many tokens into them. The tree is therefore finite for every net, and for a
+ * bounded net it is the breadth-first search tree of the reachability graph.
+ * <p>
+ * For every reachable marking m there is a node that equals m in all places in which it is not {@link #OMEGA}, and for
+ * every node and every bound there is a reachable marking that equals the node in these places and exceeds the bound
+ * in the others. Nodes are stored hash-consed in a {@link MarkingTable}, and a new node is pruned if it is subsumed by
+ * an existing one, i.e. if the existing node only differs from it by {@link #OMEGA} in some places, since the
+ * subtree of the existing node represents all markings of the subtree of the new one.
+ */
+public class CoverabilityGraph {
+    /**
+     * the number of tokens of a place that can hold arbitrarily many tokens
+     */
+    public static final int OMEGA = Integer.MAX_VALUE;
+
+    private final IndexedPetrinet net;
+    private final MarkingTable nodes;
+    /**
+     * per node its predecessor, -1 for the initial marking, and the transition leading to it
+     */
+    private int[] predecessors = new int[1024];
+    private int[] incomingTransitions = new int[1024];
+    /**
+     * the distinct sets of places with {@link #OMEGA} of the nodes, to look up the nodes that may subsume a new one
+     */
+    private final List<BitSet> omegaSets = new ArrayList<>();
+    private final BitSet unboundedPlaces = new BitSet();
+
+    /**
+     * Builds the coverability tree.
+     *
+     * @param net              the net
+     * @param m0               the initial marking vector
+     * @param maxNumberOfNodes the number of nodes after which the construction gives up
+     * @throws IllegalArgumentException if the tree has more than maxNumberOfNodes nodes
+     */
+    public CoverabilityGraph(IndexedPetrinet net, int[] m0, int maxNumberOfNodes) {
+        this.net = net;
+        int numberOfPlaces = net.getNumberOfPlaces();
+        nodes = new MarkingTable(numberOfPlaces);
+        nodes.add(m0, net.hash(m0));
+        predecessors[0] = -1;
+
+        int[] m = new int[numberOfPlaces];
+        int[] successor = new int[numberOfPlaces];
+        // the ids are given in insertion order, so the table itself is the queue of the breadth-first search
+        for (int s = 0; s < nodes.size(); s++) {
+            nodes.get(s, m);
+            for (int t = 0; t < net.getNumberOfTransitions(); t++) {
+                if (!net.isEnabled(m, t)) {
+                    continue;
+                }
+                System.arraycopy(m, 0, successor, 0, numberOfPlaces);
+                long hash = fire(successor, t, nodes.getHash(s));
+                if (nodes.find(successor, hash) >= 0) {
+                    continue;
+                }
+                if (accelerate(s, successor)) {
+                    hash = net.hash(successor);
+                }
+                if (isSubsumed(successor)) {
+                    continue;
+                }
+                int id = nodes.add(successor, hash);
+                if (id == predecessors.length) {
+                    predecessors = Arrays.copyOf(predecessors, 2 * id);
+                    incomingTransitions = Arrays.copyOf(incomingTransitions, 2 * id);
+                }
+                predecessors[id] = s;
+                incomingTransitions[id] = t;
+                addOmegaSet(successor);
+                if (nodes.size() > maxNumberOfNodes) {
+                    throw new IllegalArgumentException("The coverability graph has more than " + maxNumberOfNodes +
+                            " nodes");
+                }
+            }
+        }
+    }
+
+    public int size() {
+        return nodes.size();
+    }
+
+    /**
+     * @param id    the id of a node
+     * @param place the index of a place
+     * @return the number of tokens in the place, or {@link #OMEGA}
+     */
+    public int get(int id, int place) {
+        return nodes.get(id, place);
+    }
+
+    /**
+     * @return the transitions leading from the initial marking to the node
+     */
+    public int[] getPath(int id) {
+        int length = 0;
+        for (int s = id; predecessors[s] >= 0; s = predecessors[s]) {
+            length++;
+        }
+        int[] path = new int[length];
+        for (int s = id; predecessors[s] >= 0; s = predecessors[s]) {
+            path[--length] = incomingTransitions[s];
+        }
+        return path;
+    }
+
+    public boolean isBounded() {
+        return unboundedPlaces.isEmpty();
+    }
+
+    public boolean isBounded(int place) {
+        return !unboundedPlaces.get(place);
+    }
+
+    /**
+     * Fires t on a marking with {@link #OMEGA}, which stays unchanged, and updates the hash of the marking.
+     */
+    private long fire(int[] m, int t, long hash) {
+        int[] places = net.getEffectPlaces(t);
+        boolean hasOmega = false;
+        for (int p : places) {
+            hasOmega |= m[p] == OMEGA;
+        }
+        if (!hasOmega) {
+            return net.fire(m, t, hash);
+        }
+        int[] effects = net.getEffects(t);
+        for (int i = 0; i < places.length; i++) {
+            if (m[places[i]] != OMEGA) {
+                m[places[i]] += effects[i];
+            }
+        }
+        return net.hash(m);
+    }
+
+    /**
+     * Sets the places to {@link #OMEGA} in which the marking strictly covers the marking of an ancestor.
+     *
+     * @return true if the marking has been changed
+     */
+    private boolean accelerate(int predecessor, int[] m) {
+        boolean changed = false;
+        for (int s = predecessor; s >= 0; s = predecessors[s]) {
+            if (!covers(m, s)) {
+                continue;
+            }
+            for (int p = 0; p < m.length; p++) {
+                if (nodes.get(s, p) < m[p] && m[p] != OMEGA) {
+                    m[p] = OMEGA;
+                    unboundedPlaces.set(p);
+                    changed = true;
+                }
+            }
+        }
+        return changed;
+    }
+
+    private boolean covers(int[] m, int node) {
+        for (int p = 0; p < m.length; p++) {
+            if (m[p] < nodes.get(node, p)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return true if there is a node that equals the marking except for {@link #OMEGA} in some places
+     */
+    private boolean isSubsumed(int[] m) {
+        int[] generalized = new int[m.length];
+        for (BitSet omegaSet : omegaSets) {
+            System.arraycopy(m, 0, generalized, 0, m.length);
+            for (int p = omegaSet.nextSetBit(0); p >= 0; p = omegaSet.nextSetBit(p + 1)) {
+                generalized[p] = OMEGA;
+            }
+            if (nodes.find(generalized, net.hash(generalized)) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void addOmegaSet(int[] m) {
+        BitSet omegaSet = new BitSet();
+        for (int p = 0; p < m.length; p++) {
+            if (m[p] == OMEGA) {
+                omegaSet.set(p);
+            }
+        }
+        if (!omegaSet.isEmpty() && !omegaSets.contains(omegaSet)) {
+            omegaSets.add(omegaSet);
+        }
+    }
+}
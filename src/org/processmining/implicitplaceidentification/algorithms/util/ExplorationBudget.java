@@ -0,0 +1,53 @@
+package org.processmining.implicitplaceidentification.algorithms.util;
+
+import java.util.concurrent.CancellationException;
+
+/**
+ * A time and memory budget for explorations of the behavior of a net. Explorations check the budget regularly and
+ * are cancelled by a {@link CancellationException} once it is exceeded. The time budget starts when the budget is
+ * created. The memory budget limits the heap in use, which includes garbage that has not been collected yet.
+ */
+public class ExplorationBudget {
+    private static final ExplorationBudget UNLIMITED = new ExplorationBudget(Long.MAX_VALUE, Long.MAX_VALUE);
+
+    private final long start = System.nanoTime();
+    private final long timeBudgetNanos;
+    private final long memoryBudgetBytes;
+
+    /**
+     * @param timeBudgetMillis  the time budget in milliseconds, Long.MAX_VALUE for no limit
+     * @param memoryBudgetBytes the maximum heap in use in bytes, Long.MAX_VALUE for no limit
+     */
+    public ExplorationBudget(long timeBudgetMillis, long memoryBudgetBytes) {
+        if (timeBudgetMillis < 0 || memoryBudgetBytes < 0) {
+            throw new IllegalArgumentException("Budgets must not be negative");
+        }
+        this.timeBudgetNanos = timeBudgetMillis >= Long.MAX_VALUE / 1_000_000 ? Long.MAX_VALUE
+                : timeBudgetMillis * 1_000_000;
+        this.memoryBudgetBytes = memoryBudgetBytes;
+    }
+
+    public static ExplorationBudget unlimited() {
+        return UNLIMITED;
+    }
+
+    public boolean isExceeded() {
+        if (System.nanoTime() - start > timeBudgetNanos) {
+            return true;
+        }
+        if (memoryBudgetBytes == Long.MAX_VALUE) {
+            return false;
+        }
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory() > memoryBudgetBytes;
+    }
+
+    /**
+     * @throws CancellationException if the budget is exceeded
+     */
+    public void check() {
+        if (isExceeded()) {
+            throw new CancellationException("The exploration budget is exceeded");
+        }
+    }
+}
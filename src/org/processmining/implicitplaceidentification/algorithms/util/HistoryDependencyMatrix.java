@@ -0,0 +1,171 @@
+package org.processmining.implicitplaceidentification.algorithms.util;
+
+import java.math.BigInteger;
+import java.nio.IntBuffer;
+import java.util.*;
+
+/**
+ * Finds linear dependencies between the marking histories of places with exact integer arithmetic.
+ * The replayed markings are the rows of a matrix with one column per place. The matrix is brought into reduced row
+ * echelon form by fraction-free Gaussian elimination, one marking at a time, so only the at most (places x places)
+ * echelon rows have to be kept. Afterwards, the history of every non-pivot place is a unique rational combination of
+ * the histories of the pivot places, which can be read off the echelon rows.
+ * <p>
+ * A place whose history is a non-negative combination of the histories of other places generalizes the replay-based
+ * criterion p1 = p2 + p3 to any number of places and any weights.
+ */
+public class HistoryDependencyMatrix {
+    private final int numberOfPlaces;
+    /**
+     * echelon rows, every row has a positive entry in its pivot column and zeros in the pivot columns of the other
+     * rows once {@link #getNonNegativeCombinations()} has reduced them
+     */
+    private final List<BigInteger[]> rows = new ArrayList<>();
+    private final List<Integer> pivotColumns = new ArrayList<>();
+    /**
+     * markings that have been added before, reducing them again would not change the matrix
+     */
+    private final Set<IntBuffer> addedMarkings = new HashSet<>();
+
+    public HistoryDependencyMatrix(int numberOfPlaces) {
+        this.numberOfPlaces = numberOfPlaces;
+    }
+
+    /**
+     * Adds all markings of the given histories.
+     *
+     * @param histories marking histories with one row per place
+     */
+    public void addHistories(MarkingHistoryStore histories) {
+        int[] marking = new int[numberOfPlaces];
+        for (int column = 0; column < histories.getNumberOfColumns() && !isFullRank(); column++) {
+            for (int p = 0; p < numberOfPlaces; p++) {
+                marking[p] = histories.get(p, column);
+            }
+            addMarking(marking);
+        }
+    }
+
+    /**
+     * Adds a marking as a row of the matrix and reduces it against the existing echelon rows.
+     *
+     * @param marking the marking vector, one entry per place
+     */
+    public void addMarking(int[] marking) {
+        if (isFullRank() || !addedMarkings.add(IntBuffer.wrap(marking.clone()))) {
+            return;
+        }
+        BigInteger[] row = new BigInteger[numberOfPlaces];
+        for (int p = 0; p < numberOfPlaces; p++) {
+            row[p] = BigInteger.valueOf(marking[p]);
+        }
+        // every echelon row has zeros in the pivot columns of the rows before it, so one pass suffices
+        for (int r = 0; r < rows.size(); r++) {
+            eliminate(row, rows.get(r), pivotColumns.get(r));
+        }
+        for (int p = 0; p < numberOfPlaces; p++) {
+            if (row[p].signum() != 0) {
+                if (row[p].signum() < 0) {
+                    negate(row);
+                }
+                rows.add(row);
+                pivotColumns.add(p);
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return true if the histories of all places are linearly independent, then no place can be a combination of
+     * other places and further markings do not have to be added
+     */
+    public boolean isFullRank() {
+        return rows.size() == numberOfPlaces;
+    }
+
+    /**
+     * Reads off all places whose history is a non-negative combination of the histories of other places.
+     * For every non-pivot place, its combination of pivot places is checked, and every dependency of the
+     * factorization is also solved for each of its pivot places with a positive coefficient.
+     * Combinations that only follow from several dependencies together are not considered.
+     *
+     * @return per place index the indices of the places in a non-negative combination that equals its history
+     */
+    public Map<Integer, BitSet> getNonNegativeCombinations() {
+        reduce();
+        Set<Integer> pivots = new HashSet<>(pivotColumns);
+        Map<Integer, BitSet> combinations = new HashMap<>();
+
+        for (int j = 0; j < numberOfPlaces; j++) {
+            if (pivots.contains(j)) {
+                continue;
+            }
+            // history(j) = sum over rows of (row[j] / row[pivot]) * history(pivot), with row[pivot] > 0
+            BitSet positive = new BitSet(numberOfPlaces);
+            BitSet negative = new BitSet(numberOfPlaces);
+            for (int r = 0; r < rows.size(); r++) {
+                int sign = rows.get(r)[j].signum();
+                if (sign > 0) {
+                    positive.set(pivotColumns.get(r));
+                } else if (sign < 0) {
+                    negative.set(pivotColumns.get(r));
+                }
+            }
+            if (negative.isEmpty() && !positive.isEmpty()) {
+                addCombination(combinations, j, positive);
+            }
+            if (positive.cardinality() == 1) {
+                // history(p) = (history(j) + sum of |c| * history(negative)) / c(p)
+                int p = positive.nextSetBit(0);
+                BitSet implyingPlaces = (BitSet) negative.clone();
+                implyingPlaces.set(j);
+                addCombination(combinations, p, implyingPlaces);
+            }
+        }
+        return combinations;
+    }
+
+    private static void addCombination(Map<Integer, BitSet> combinations, int place, BitSet implyingPlaces) {
+        combinations.computeIfAbsent(place, p -> new BitSet()).or(implyingPlaces);
+    }
+
+    /**
+     * Eliminates the pivot columns of all rows from the other rows, last row first.
+     */
+    private void reduce() {
+        for (int k = rows.size() - 1; k >= 0; k--) {
+            for (int r = 0; r < k; r++) {
+                eliminate(rows.get(r), rows.get(k), pivotColumns.get(k));
+            }
+        }
+    }
+
+    /**
+     * Sets row[pivot] to zero by replacing row with pivotRow[pivot] * row - row[pivot] * pivotRow, and divides the
+     * result by the gcd of its entries. Since pivotRow[pivot] is positive, the signs of the other entries of row
+     * that are zero in pivotRow are kept.
+     */
+    private void eliminate(BigInteger[] row, BigInteger[] pivotRow, int pivot) {
+        BigInteger factor = row[pivot];
+        if (factor.signum() == 0) {
+            return;
+        }
+        BigInteger pivotValue = pivotRow[pivot];
+        BigInteger gcd = BigInteger.ZERO;
+        for (int p = 0; p < numberOfPlaces; p++) {
+            row[p] = row[p].multiply(pivotValue).subtract(pivotRow[p].multiply(factor));
+            gcd = gcd.gcd(row[p]);
+        }
+        if (gcd.compareTo(BigInteger.ONE) > 0) {
+            for (int p = 0; p < numberOfPlaces; p++) {
+                row[p] = row[p].divide(gcd);
+            }
+        }
+    }
+
+    private static void negate(BigInteger[] row) {
+        for (int p = 0; p < row.length; p++) {
+            row[p] = row[p].negate();
+        }
+    }
+}
@@ -0,0 +1,409 @@
+package org.processmining.implicitplaceidentification.algorithms.util;
+
+import com.google.common.collect.BiMap;
+import org.processmining.models.graphbased.directed.petrinet.Petrinet;
+import org.processmining.models.graphbased.directed.petrinet.elements.Place;
+import org.processmining.models.graphbased.directed.petrinet.elements.Transition;
+import org.processmining.models.semantics.petrinet.Marking;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * An immutable, index based view on a Petri net.
+ * Places and transitions are numbered like in {@link AlgebraClass}, and for every transition the input places and
+ * the places whose marking changes when firing it are stored as sparse lists, so markings can be handled as int
+ * vectors without going through the graph structure of the net.
+ */
+public class IndexedPetrinet {
+    private final BiMap<Place, Integer> placeToIndexMap;
+    private final BiMap<Transition, Integer> transitionToIndexMap;
+    /**
+     * input places and the number of tokens consumed from them, per transition
+     */
+    private final int[][] inputPlaces;
+    private final int[][] inputWeights;
+    /**
+     * output places and the number of tokens produced in them, per transition
+     */
+    private final int[][] outputPlaces;
+    private final int[][] outputWeights;
+    /**
+     * places whose marking changes when firing the transition and the change, per transition
+     */
+    private final int[][] effectPlaces;
+    private final int[][] effects;
+
+    public IndexedPetrinet(Petrinet petrinet) {
+        placeToIndexMap = AlgebraClass.createPlaceToIndexBiMap(petrinet);
+        transitionToIndexMap = AlgebraClass.createTransitionToIndexBiMap(petrinet);
+
+        // the arcs are read per transition instead of through the incidence matrices, which would take time and
+        // memory proportional to the number of places times the number of transitions
+        int numberOfTransitions = transitionToIndexMap.size();
+        inputPlaces = new int[numberOfTransitions][];
+        inputWeights = new int[numberOfTransitions][];
+        outputPlaces = new int[numberOfTransitions][];
+        outputWeights = new int[numberOfTransitions][];
+        effectPlaces = new int[numberOfTransitions][];
+        effects = new int[numberOfTransitions][];
+
+        for (Transition transition : petrinet.getTransitions()) {
+            int t = transitionToIndexMap.get(transition);
+            int[] inputs = petrinet.getInEdges(transition).stream()
+                    .mapToInt(e -> placeToIndexMap.get(e.getSource())).sorted().toArray();
+            int[] outputs = petrinet.getOutEdges(transition).stream()
+                    .mapToInt(e -> placeToIndexMap.get(e.getTarget())).sorted().toArray();
+            inputPlaces[t] = distinct(inputs);
+            inputWeights[t] = countOccurrences(inputs, inputPlaces[t]);
+            outputPlaces[t] = distinct(outputs);
+            outputWeights[t] = countOccurrences(outputs, outputPlaces[t]);
+
+            // merge the sorted inputs and outputs into the places whose marking changes
+            List<Integer> changes = new ArrayList<>();
+            List<Integer> changeValues = new ArrayList<>();
+            int i = 0;
+            int o = 0;
+            while (i < inputPlaces[t].length || o < outputPlaces[t].length) {
+                int p = Math.min(i < inputPlaces[t].length ? inputPlaces[t][i] : Integer.MAX_VALUE,
+                        o < outputPlaces[t].length ? outputPlaces[t][o] : Integer.MAX_VALUE);
+                int change = 0;
+                if (i < inputPlaces[t].length && inputPlaces[t][i] == p) {
+                    change -= inputWeights[t][i++];
+                }
+                if (o < outputPlaces[t].length && outputPlaces[t][o] == p) {
+                    change += outputWeights[t][o++];
+                }
+                if (change != 0) {
+                    changes.add(p);
+                    changeValues.add(change);
+                }
+            }
+            effectPlaces[t] = changes.stream().mapToInt(Integer::intValue).toArray();
+            effects[t] = changeValues.stream().mapToInt(Integer::intValue).toArray();
+        }
+    }
+
+    /**
+     * @param sorted a sorted array
+     * @return the distinct values of the array in ascending order
+     */
+    private static int[] distinct(int[] sorted) {
+        return Arrays.stream(sorted).distinct().toArray();
+    }
+
+    /**
+     * @return per value how often it occurs in the sorted array
+     */
+    private static int[] countOccurrences(int[] sorted, int[] values) {
+        int[] counts = new int[values.length];
+        int v = 0;
+        for (int x : sorted) {
+            while (values[v] != x) {
+                v++;
+            }
+            counts[v]++;
+        }
+        return counts;
+    }
+
+    private IndexedPetrinet(BiMap<Place, Integer> placeToIndexMap, BiMap<Transition, Integer> transitionToIndexMap,
+                            int[][] inputPlaces, int[][] inputWeights, int[][] outputPlaces, int[][] outputWeights,
+                            int[][] effectPlaces, int[][] effects) {
+        this.placeToIndexMap = placeToIndexMap;
+        this.transitionToIndexMap = transitionToIndexMap;
+        this.inputPlaces = inputPlaces;
+        this.inputWeights = inputWeights;
+        this.outputPlaces = outputPlaces;
+        this.outputWeights = outputWeights;
+        this.effectPlaces = effectPlaces;
+        this.effects = effects;
+    }
+
+    /**
+     * Creates a view on this net in which some places are removed. The places keep their indices, but no
+     * transition consumes from or produces into them anymore, so their tokens are neither checked nor changed.
+     * The view shares all data with this net except for the arcs of the transitions connected to the removed places.
+     *
+     * @param places the indices of the places to remove
+     * @return the view
+     */
+    public IndexedPetrinet withoutPlaces(BitSet places) {
+        int numberOfTransitions = getNumberOfTransitions();
+        int[][] viewInputPlaces = inputPlaces.clone();
+        int[][] viewInputWeights = inputWeights.clone();
+        int[][] viewOutputPlaces = outputPlaces.clone();
+        int[][] viewOutputWeights = outputWeights.clone();
+        int[][] viewEffectPlaces = effectPlaces.clone();
+        int[][] viewEffects = effects.clone();
+        for (int t = 0; t < numberOfTransitions; t++) {
+            removePlaces(viewInputPlaces, viewInputWeights, t, places);
+            removePlaces(viewOutputPlaces, viewOutputWeights, t, places);
+            removePlaces(viewEffectPlaces, viewEffects, t, places);
+        }
+        return new IndexedPetrinet(placeToIndexMap, transitionToIndexMap, viewInputPlaces, viewInputWeights,
+                viewOutputPlaces, viewOutputWeights, viewEffectPlaces, viewEffects);
+    }
+
+    /**
+     * @see #withoutPlaces(BitSet)
+     */
+    public IndexedPetrinet withoutPlace(int place) {
+        BitSet places = new BitSet();
+        places.set(place);
+        return withoutPlaces(places);
+    }
+
+    /**
+     * Replaces the sparse list of transition t by a list without the given places, if it contains one of them.
+     */
+    private static void removePlaces(int[][] placeLists, int[][] valueLists, int t, BitSet places) {
+        int[] placesOfT = placeLists[t];
+        int kept = 0;
+        for (int p : placesOfT) {
+            if (!places.get(p)) {
+                kept++;
+            }
+        }
+        if (kept == placesOfT.length) {
+            return;
+        }
+        int[] keptPlaces = new int[kept];
+        int[] keptValues = new int[kept];
+        kept = 0;
+        for (int i = 0; i < placesOfT.length; i++) {
+            if (!places.get(placesOfT[i])) {
+                keptPlaces[kept] = placesOfT[i];
+                keptValues[kept++] = valueLists[t][i];
+            }
+        }
+        placeLists[t] = keptPlaces;
+        valueLists[t] = keptValues;
+    }
+
+    public int getNumberOfPlaces() {
+        return placeToIndexMap.size();
+    }
+
+    public int getNumberOfTransitions() {
+        return transitionToIndexMap.size();
+    }
+
+    public BiMap<Place, Integer> getPlaceToIndexMap() {
+        return placeToIndexMap;
+    }
+
+    public BiMap<Transition, Integer> getTransitionToIndexMap() {
+        return transitionToIndexMap;
+    }
+
+    /**
+     * @param t the index of a transition
+     * @return the indices of the input places of t, the array must not be modified
+     */
+    public int[] getInputPlaces(int t) {
+        return inputPlaces[t];
+    }
+
+    /**
+     * @param t the index of a transition
+     * @return the number of tokens t consumes from each of its input places, the array must not be modified
+     */
+    public int[] getInputWeights(int t) {
+        return inputWeights[t];
+    }
+
+    /**
+     * @param t the index of a transition
+     * @return the indices of the output places of t, the array must not be modified
+     */
+    public int[] getOutputPlaces(int t) {
+        return outputPlaces[t];
+    }
+
+    /**
+     * @param t the index of a transition
+     * @return the number of tokens t produces in each of its output places, the array must not be modified
+     */
+    public int[] getOutputWeights(int t) {
+        return outputWeights[t];
+    }
+
+    /**
+     * @param t the index of a transition
+     * @return the indices of the places whose number of tokens changes when t fires, the array must not be modified
+     */
+    public int[] getEffectPlaces(int t) {
+        return effectPlaces[t];
+    }
+
+    /**
+     * @param t the index of a transition
+     * @return the change of the number of tokens per effect place of t, the array must not be modified
+     */
+    public int[] getEffects(int t) {
+        return effects[t];
+    }
+
+    /**
+     * Transforms a {@link Marking} of the net into a marking vector.
+     *
+     * @param marking a marking of the net
+     * @return the number of tokens per place index
+     */
+    public int[] toMarkingVector(Marking marking) {
+        int[] m = new int[getNumberOfPlaces()];
+        marking.forEach(p -> m[placeToIndexMap.get(p)]++);
+        return m;
+    }
+
+    /**
+     * Checks whether a transition is enabled in a marking.
+     *
+     * @param m the marking vector
+     * @param t the index of the transition
+     * @return true if every input place of t holds enough tokens
+     */
+    public boolean isEnabled(int[] m, int t) {
+        int[] places = inputPlaces[t];
+        int[] weights = inputWeights[t];
+        for (int i = 0; i < places.length; i++) {
+            if (m[places[i]] < weights[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether firing a transition keeps its output places below a bound, which is how the language
+     * generation keeps the explored state space finite.
+     *
+     * @param m            the marking vector
+     * @param t            the index of the transition
+     * @param markingBound the bound
+     * @param ignoredPlace the index of a place that is not bounded, or -1
+     * @return false if firing t would put markingBound or more tokens into one of its output places, not counting
+     * the tokens it adds itself
+     */
+    public boolean isWithinBound(int[] m, int t, int markingBound, int ignoredPlace) {
+        for (int p : outputPlaces[t]) {
+            if (p != ignoredPlace && tokensAfterConsumption(m, t, p) >= markingBound) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the number of tokens in the place after t consumed its tokens but before it produces any
+     */
+    public int tokensAfterConsumption(int[] m, int t, int place) {
+        int tokens = m[place];
+        int[] places = inputPlaces[t];
+        for (int i = 0; i < places.length; i++) {
+            if (places[i] == place) {
+                tokens -= inputWeights[t][i];
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * Fires a transition by updating the given marking vector in place. Enabledness is not checked.
+     *
+     * @param m the marking vector, which is changed to the marking after firing t
+     * @param t the index of the transition
+     */
+    public void fire(int[] m, int t) {
+        int[] places = effectPlaces[t];
+        int[] change = effects[t];
+        for (int i = 0; i < places.length; i++) {
+            m[places[i]] += change[i];
+        }
+    }
+
+    /**
+     * Reverts {@link #fire(int[], int)}, e.g. when backtracking.
+     *
+     * @param m the marking vector after firing t, which is changed to the marking before firing t
+     * @param t the index of the transition
+     */
+    public void unfire(int[] m, int t) {
+        int[] places = effectPlaces[t];
+        int[] change = effects[t];
+        for (int i = 0; i < places.length; i++) {
+            m[places[i]] -= change[i];
+        }
+    }
+
+    /**
+     * Fires a transition like {@link #fire(int[], int)} and updates the {@link #hash(int[])} of the marking, which
+     * only takes the effect places of t into account.
+     *
+     * @param m    the marking vector, which is changed to the marking after firing t
+     * @param t    the index of the transition
+     * @param hash the hash of the marking before firing t
+     * @return the hash of the marking after firing t
+     */
+    public long fire(int[] m, int t, long hash) {
+        int[] places = effectPlaces[t];
+        int[] change = effects[t];
+        for (int i = 0; i < places.length; i++) {
+            int p = places[i];
+            hash ^= zobristKey(p, m[p]);
+            m[p] += change[i];
+            hash ^= zobristKey(p, m[p]);
+        }
+        return hash;
+    }
+
+    /**
+     * Reverts {@link #fire(int[], int, long)}.
+     *
+     * @param m    the marking vector after firing t, which is changed to the marking before firing t
+     * @param t    the index of the transition
+     * @param hash the hash of the marking after firing t
+     * @return the hash of the marking before firing t
+     */
+    public long unfire(int[] m, int t, long hash) {
+        int[] places = effectPlaces[t];
+        int[] change = effects[t];
+        for (int i = 0; i < places.length; i++) {
+            int p = places[i];
+            hash ^= zobristKey(p, m[p]);
+            m[p] -= change[i];
+            hash ^= zobristKey(p, m[p]);
+        }
+        return hash;
+    }
+
+    /**
+     * Computes a Zobrist hash of a marking vector, i.e. the xor of a pseudo-random key per place and number of
+     * tokens in it. Equal markings have equal hashes, and the hash can be updated by the fire methods in time
+     * proportional to the number of places a transition changes.
+     *
+     * @param m the marking vector
+     * @return the hash of the marking
+     */
+    public long hash(int[] m) {
+        long hash = 0;
+        for (int p = 0; p < m.length; p++) {
+            hash ^= zobristKey(p, m[p]);
+        }
+        return hash;
+    }
+
+    /**
+     * The key of a place holding a number of tokens, computed by the SplitMix64 finalizer instead of a table, so any
+     * number of tokens is supported.
+     */
+    private static long zobristKey(int place, int tokens) {
+        long z = (((long) place << 32) | (tokens & 0xFFFFFFFFL)) + 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
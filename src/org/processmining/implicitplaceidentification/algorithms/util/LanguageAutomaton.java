@@ -0,0 +1,407 @@
+package org.processmining.implicitplaceidentification.algorithms.util;
+
+import java.nio.IntBuffer;
+import java.util.*;
+
+/**
+ * Stores a finite language as a deterministic acyclic automaton (DAFSA). Labels are interned as ints, common prefixes
+ * are shared while words are added, and common suffixes are merged as soon as no further word can extend them, so
+ * the automaton stays close to the minimal one while the language is generated.
+ * <p>
+ * Words are expected in an order in which consecutive words share their longest common prefix, like the traces of a
+ * depth-first search. Words in any other order are handled as well: states that have already been merged are copied
+ * before they are extended.
+ */
+public class LanguageAutomaton {
+    private final List<String> labels = new ArrayList<>();
+    private final HashMap<String, Integer> labelIndices = new HashMap<>();
+    /**
+     * merged states by their content, every state in here is final and may be shared
+     */
+    private final HashMap<State, State> register = new HashMap<>();
+    private final State root = new State();
+    /**
+     * states of the last added word that have not been merged yet, starting with the root
+     */
+    private final List<State> path = new ArrayList<>();
+    private int[] lastWord = new int[0];
+    private long numberOfWords;
+    private int numberOfStates = 1;
+
+    public LanguageAutomaton() {
+        path.add(root);
+    }
+
+    /**
+     * @param label a label
+     * @return the index of the label in this automaton, the label is added if it is new
+     */
+    public int intern(String label) {
+        return labelIndices.computeIfAbsent(label, l -> {
+            labels.add(l);
+            return labels.size() - 1;
+        });
+    }
+
+    /**
+     * Adds a word given as label indices.
+     *
+     * @param word   buffer with the label indices of the word
+     * @param length the length of the word
+     * @return true if the word has not been in the language before
+     */
+    public boolean add(int[] word, int length) {
+        // merge the states of the last word that are not on the path of the new word
+        int commonPrefix = 0;
+        while (commonPrefix < length && commonPrefix < lastWord.length && word[commonPrefix] == lastWord[commonPrefix]) {
+            commonPrefix++;
+        }
+        mergePathBeyond(commonPrefix);
+
+        State state = path.get(path.size() - 1);
+        for (int i = commonPrefix; i < length; i++) {
+            State successor = state.getSuccessor(word[i]);
+            if (successor == null) {
+                successor = new State();
+                numberOfStates++;
+            } else {
+                // merged states may be shared, so they are copied before being extended
+                successor = successor.copy();
+                numberOfStates++;
+            }
+            state.setSuccessor(word[i], successor);
+            path.add(successor);
+            state = successor;
+        }
+        lastWord = Arrays.copyOf(word, length);
+
+        if (state.accepting) {
+            return false;
+        }
+        state.accepting = true;
+        numberOfWords++;
+        return true;
+    }
+
+    /**
+     * Adds a word given as a sequence of transitions.
+     *
+     * @param trace            buffer with the transition indices of the word
+     * @param length           the length of the word
+     * @param labelOfTransition the label index of every transition, see {@link #intern(String)}
+     * @return true if the word has not been in the language before
+     */
+    public boolean add(int[] trace, int length, int[] labelOfTransition) {
+        int[] word = new int[length];
+        for (int i = 0; i < length; i++) {
+            word[i] = labelOfTransition[trace[i]];
+        }
+        return add(word, length);
+    }
+
+    /**
+     * Adds the words of an acyclic automaton to this empty automaton. The acyclic automaton may be nondeterministic,
+     * e.g. because several transitions share a label: it is determinized by a subset construction and the resulting
+     * states are merged bottom-up, so this automaton is minimal afterwards.
+     *
+     * @param initialNode the initial node of the acyclic automaton
+     * @param accepting   the accepting nodes
+     * @param edgeLabels  per node the label indices of its outgoing edges, see {@link #intern(String)}
+     * @param edgeTargets per node the targets of its outgoing edges
+     */
+    public void addAll(int initialNode, BitSet accepting, int[][] edgeLabels, int[][] edgeTargets) {
+        if (numberOfWords > 0 || root.size > 0) {
+            throw new IllegalStateException("Words can only be added by an acyclic automaton to an empty automaton");
+        }
+        Map<IntBuffer, State> determinized = new HashMap<>();
+        Map<State, Long> wordCounts = new IdentityHashMap<>();
+        numberOfWords = determinize(root, new int[]{initialNode}, accepting, edgeLabels, edgeTargets, determinized,
+                wordCounts);
+        numberOfStates = register.size() + 1;
+    }
+
+    /**
+     * Sets the content of a state to the union of the languages of a set of nodes. Successor states are determinized
+     * recursively and merged.
+     *
+     * @return the number of words accepted from the state
+     */
+    private long determinize(State state, int[] nodes, BitSet accepting, int[][] edgeLabels, int[][] edgeTargets,
+                             Map<IntBuffer, State> determinized, Map<State, Long> wordCounts) {
+        long words = 0;
+        int numberOfEdges = 0;
+        for (int node : nodes) {
+            if (accepting.get(node)) {
+                state.accepting = true;
+            }
+            numberOfEdges += edgeLabels[node].length;
+        }
+        if (state.accepting) {
+            words++;
+        }
+
+        // the edges of all nodes, sorted by label and target
+        long[] edges = new long[numberOfEdges];
+        int e = 0;
+        for (int node : nodes) {
+            for (int i = 0; i < edgeLabels[node].length; i++) {
+                edges[e++] = (long) edgeLabels[node][i] << 32 | edgeTargets[node][i];
+            }
+        }
+        Arrays.sort(edges);
+
+        int from = 0;
+        while (from < edges.length) {
+            int label = (int) (edges[from] >>> 32);
+            int to = from;
+            while (to < edges.length && (int) (edges[to] >>> 32) == label) {
+                to++;
+            }
+            int[] targets = Arrays.stream(edges, from, to).mapToInt(edge -> (int) edge).distinct().toArray();
+            IntBuffer key = IntBuffer.wrap(targets);
+            State successor = determinized.get(key);
+            if (successor == null) {
+                successor = new State();
+                long successorWords = determinize(successor, targets, accepting, edgeLabels, edgeTargets,
+                        determinized, wordCounts);
+                State merged = register.get(successor);
+                if (merged == null) {
+                    successor.freeze();
+                    register.put(successor, successor);
+                    wordCounts.put(successor, successorWords);
+                    merged = successor;
+                }
+                successor = merged;
+                determinized.put(key, successor);
+            }
+            state.setSuccessor(label, successor);
+            words += wordCounts.get(successor);
+            from = to;
+        }
+        return words;
+    }
+
+    /**
+     * Merges all remaining states. Words can still be added afterwards.
+     */
+    public void minimize() {
+        mergePathBeyond(0);
+        lastWord = new int[0];
+    }
+
+    /**
+     * Replaces the states on the path after the given number of labels by equivalent merged states, last state first.
+     */
+    private void mergePathBeyond(int prefixLength) {
+        for (int i = path.size() - 1; i > prefixLength; i--) {
+            State state = path.remove(i);
+            State merged = register.get(state);
+            if (merged == null) {
+                state.freeze();
+                register.put(state, state);
+                merged = state;
+            } else {
+                numberOfStates--;
+            }
+            path.get(i - 1).setSuccessor(lastWord[i - 1], merged);
+        }
+    }
+
+    public long getNumberOfWords() {
+        return numberOfWords;
+    }
+
+    /**
+     * @return the number of states that are currently used, at most the number of states of the prefix tree
+     */
+    public int getNumberOfStates() {
+        return numberOfStates;
+    }
+
+    /**
+     * Checks whether two automata accept the same language by walking both automata in lockstep. Labels are matched
+     * by their names, so the automata do not need to share their label indices.
+     *
+     * @param other another automaton
+     * @return true if both languages are equal
+     */
+    public boolean isEquivalentTo(LanguageAutomaton other) {
+        if (numberOfWords != other.numberOfWords) {
+            return false;
+        }
+        int[] toOtherLabel = mapLabelsTo(other);
+        // visited pairs of states, states are compared by identity
+        Map<State, Set<State>> visited = new IdentityHashMap<>();
+        Deque<State[]> pairs = new ArrayDeque<>();
+        pairs.push(new State[]{root, other.root});
+        while (!pairs.isEmpty()) {
+            State[] pair = pairs.pop();
+            if (!visited.computeIfAbsent(pair[0], s -> Collections.newSetFromMap(new IdentityHashMap<>()))
+                    .add(pair[1])) {
+                continue;
+            }
+            State state = pair[0];
+            State otherState = pair[1];
+            if (state.accepting != otherState.accepting || state.size != otherState.size) {
+                return false;
+            }
+            for (int e = 0; e < state.size; e++) {
+                int otherLabel = toOtherLabel[state.labels[e]];
+                State otherSuccessor = otherLabel < 0 ? null : otherState.getSuccessor(otherLabel);
+                if (otherSuccessor == null) {
+                    return false;
+                }
+                pairs.push(new State[]{state.targets[e], otherSuccessor});
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Enumerates words of this language that are not in the language of the other automaton.
+     *
+     * @param other another automaton
+     * @param limit the maximum number of words to return
+     * @return up to limit words of this language that the other automaton does not accept
+     */
+    public List<List<String>> getWordsNotIn(LanguageAutomaton other, int limit) {
+        List<List<String>> words = new ArrayList<>();
+        collectWordsNotIn(root, other.root, mapLabelsTo(other), new ArrayList<>(), words, limit,
+                new IdentityHashMap<>());
+        return words;
+    }
+
+    /**
+     * @param pairsWithoutWords pairs of states from which no word has been found, so they are not walked again
+     * @return true if a word has been found
+     */
+    private boolean collectWordsNotIn(State state, State otherState, int[] toOtherLabel, List<String> prefix,
+                                      List<List<String>> words, int limit,
+                                      Map<State, Set<State>> pairsWithoutWords) {
+        if (otherState != null && pairsWithoutWords.getOrDefault(state, Collections.emptySet()).contains(otherState)) {
+            return false;
+        }
+        boolean found = false;
+        if (state.accepting && (otherState == null || !otherState.accepting)) {
+            words.add(new ArrayList<>(prefix));
+            found = true;
+        }
+        for (int e = 0; e < state.size && words.size() < limit; e++) {
+            int otherLabel = toOtherLabel[state.labels[e]];
+            State otherSuccessor = otherState == null || otherLabel < 0 ? null : otherState.getSuccessor(otherLabel);
+            prefix.add(labels.get(state.labels[e]));
+            found |= collectWordsNotIn(state.targets[e], otherSuccessor, toOtherLabel, prefix, words, limit,
+                    pairsWithoutWords);
+            prefix.remove(prefix.size() - 1);
+        }
+        if (!found && otherState != null) {
+            pairsWithoutWords.computeIfAbsent(state, s -> Collections.newSetFromMap(new IdentityHashMap<>()))
+                    .add(otherState);
+        }
+        return found;
+    }
+
+    /**
+     * @return all words of the language as label sequences
+     */
+    public Set<List<String>> getWords() {
+        List<List<String>> words = new ArrayList<>();
+        collectWordsNotIn(root, null, new int[labels.size()], new ArrayList<>(), words, Integer.MAX_VALUE,
+                new IdentityHashMap<>());
+        return new HashSet<>(words);
+    }
+
+    /**
+     * @return per label index of this automaton the index of the same label in the other automaton, or -1
+     */
+    private int[] mapLabelsTo(LanguageAutomaton other) {
+        int[] toOtherLabel = new int[labels.size()];
+        for (int l = 0; l < labels.size(); l++) {
+            toOtherLabel[l] = other.labelIndices.getOrDefault(labels.get(l), -1);
+        }
+        return toOtherLabel;
+    }
+
+    /**
+     * A state with its outgoing edges sorted by label. Merged states are frozen and compared by content, their
+     * successors are merged states as well and are compared by identity.
+     */
+    private static final class State {
+        private boolean accepting;
+        private int[] labels = new int[0];
+        private State[] targets = new State[0];
+        private int size;
+        private boolean frozen;
+        private int hash;
+
+        State getSuccessor(int label) {
+            int e = Arrays.binarySearch(labels, 0, size, label);
+            return e >= 0 ? targets[e] : null;
+        }
+
+        void setSuccessor(int label, State target) {
+            int e = Arrays.binarySearch(labels, 0, size, label);
+            if (e >= 0) {
+                targets[e] = target;
+                return;
+            }
+            int insertion = -e - 1;
+            if (size == labels.length) {
+                labels = Arrays.copyOf(labels, Math.max(2, size * 2));
+                targets = Arrays.copyOf(targets, labels.length);
+            }
+            System.arraycopy(labels, insertion, labels, insertion + 1, size - insertion);
+            System.arraycopy(targets, insertion, targets, insertion + 1, size - insertion);
+            labels[insertion] = label;
+            targets[insertion] = target;
+            size++;
+        }
+
+        State copy() {
+            State copy = new State();
+            copy.accepting = accepting;
+            copy.labels = Arrays.copyOf(labels, size);
+            copy.targets = Arrays.copyOf(targets, size);
+            copy.size = size;
+            return copy;
+        }
+
+        void freeze() {
+            labels = Arrays.copyOf(labels, size);
+            targets = Arrays.copyOf(targets, size);
+            frozen = true;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof State)) {
+                return false;
+            }
+            State other = (State) o;
+            if (accepting != other.accepting || size != other.size || hashCode() != other.hashCode()) {
+                return false;
+            }
+            for (int e = 0; e < size; e++) {
+                if (labels[e] != other.labels[e] || targets[e] != other.targets[e]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            if (frozen && hash != 0) {
+                return hash;
+            }
+            int h = accepting ? 1 : 0;
+            for (int e = 0; e < size; e++) {
+                h = 31 * (31 * h + labels[e]) + System.identityHashCode(targets[e]);
+            }
+            if (frozen) {
+                hash = h;
+            }
+            return h;
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package org.processmining.implicitplaceidentification.algorithms.util;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Keeps the marking histories in a memory-mapped temporary file, so they do not have to fit into the heap.
+ * The columns are split into blocks of a fixed number of bytes, every block is stored place-major. Streaming over
+ * the histories block by block therefore only needs one block to be resident at a time and leaves paging to the
+ * operating system.
+ */
+public class MappedMarkingHistoryStore extends MarkingHistoryStore {
+    /**
+     * default size of a block, small enough that the rows of a block that are compared stay in the cache
+     */
+    public static final int DEFAULT_BLOCK_BYTES = 1 << 20;
+    /**
+     * a single mapping cannot exceed 2 GB, so the file is mapped in segments of whole blocks
+     */
+    private static final long MAX_SEGMENT_BYTES = 1L << 30;
+
+    private final Path file;
+    private final int bytesPerValue;
+    private final int columnsPerBlock;
+    private final int blocksPerSegment;
+    private final MappedByteBuffer[] segments;
+    private boolean closed;
+
+    /**
+     * Creates an empty store backed by a new temporary file.
+     *
+     * @param directory         the directory in which the temporary file is created
+     * @param numberOfPlaces    the number of places (rows)
+     * @param variantLengths    the number of columns (markings) of every variant
+     * @param maxNumberOfTokens the largest number of tokens that will be stored
+     * @param blockBytes        the targeted size of a block in bytes
+     */
+    public MappedMarkingHistoryStore(Path directory, int numberOfPlaces, int[] variantLengths,
+                                     int maxNumberOfTokens, int blockBytes) {
+        super(numberOfPlaces, variantLengths);
+        this.bytesPerValue = bytesPerValue(maxNumberOfTokens);
+        long bytesPerColumn = (long) Math.max(1, numberOfPlaces) * bytesPerValue;
+        this.columnsPerBlock = (int) Math.max(1, blockBytes / bytesPerColumn);
+        long bytesPerBlock = columnsPerBlock * bytesPerColumn;
+        this.blocksPerSegment = (int) Math.max(1, MAX_SEGMENT_BYTES / bytesPerBlock);
+
+        int numberOfSegments = (getNumberOfBlocks() + blocksPerSegment - 1) / blocksPerSegment;
+        segments = new MappedByteBuffer[numberOfSegments];
+        try {
+            file = Files.createTempFile(directory, "marking-histories", ".bin");
+            // only a fallback for stores that are not closed, or whose file cannot be deleted while it is mapped
+            file.toFile().deleteOnExit();
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                long totalBytes = (long) numberOfColumns * bytesPerColumn;
+                for (int s = 0; s < numberOfSegments; s++) {
+                    long offset = s * blocksPerSegment * bytesPerBlock;
+                    segments[s] = channel.map(FileChannel.MapMode.READ_WRITE, offset,
+                            Math.min(blocksPerSegment * bytesPerBlock, totalBytes - offset));
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not create the file for the marking histories", e);
+        }
+    }
+
+    /**
+     * @return the file the histories are written to
+     */
+    public Path getFile() {
+        return file;
+    }
+
+    @Override
+    public int getNumberOfBlocks() {
+        return (numberOfColumns + columnsPerBlock - 1) / columnsPerBlock;
+    }
+
+    @Override
+    public int getBlockStart(int block) {
+        return block * columnsPerBlock;
+    }
+
+    @Override
+    public int getBlockEnd(int block) {
+        return Math.min(numberOfColumns, (block + 1) * columnsPerBlock);
+    }
+
+    /**
+     * Drops the mappings and deletes the file. The mapped memory is released once the buffers have been garbage
+     * collected. On platforms that do not allow to delete a mapped file, the file is deleted when the JVM exits.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        Arrays.fill(segments, null);
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            System.out.println("Could not delete " + file + ", it is deleted on exit: " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return the segment that holds the given block
+     */
+    private ByteBuffer segmentOf(int block) {
+        if (closed) {
+            throw new IllegalStateException("The marking histories have been closed");
+        }
+        return segments[block / blocksPerSegment];
+    }
+
+    /**
+     * @return the index of the value of the place in the first column of the block, relative to its segment
+     */
+    private int rowStart(int block, int place) {
+        int blockStart = getBlockStart(block);
+        int blockWidth = getBlockEnd(block) - blockStart;
+        return (block % blocksPerSegment) * columnsPerBlock * numberOfPlaces + place * blockWidth;
+    }
+
+    private int getValue(ByteBuffer segment, int index) {
+        switch (bytesPerValue) {
+            case Byte.BYTES:
+                return segment.get(index);
+            case Short.BYTES:
+                return segment.getShort(index * Short.BYTES);
+            default:
+                return segment.getInt(index * Integer.BYTES);
+        }
+    }
+
+    @Override
+    public void setColumn(int column, int[] marking) {
+        int block = column / columnsPerBlock;
+        ByteBuffer segment = segmentOf(block);
+        int offset = column - getBlockStart(block);
+        for (int p = 0; p < numberOfPlaces; p++) {
+            int index = rowStart(block, p) + offset;
+            switch (bytesPerValue) {
+                case Byte.BYTES:
+                    segment.put(index, (byte) marking[p]);
+                    break;
+                case Short.BYTES:
+                    segment.putShort(index * Short.BYTES, (short) marking[p]);
+                    break;
+                default:
+                    segment.putInt(index * Integer.BYTES, marking[p]);
+            }
+        }
+    }
+
+    @Override
+    public int get(int place, int column) {
+        int block = column / columnsPerBlock;
+        return getValue(segmentOf(block), rowStart(block, place) + column - getBlockStart(block));
+    }
+
+    @Override
+    public boolean isGreaterOrEqual(int p1, int p2, int from, int to) {
+        for (int block = from / columnsPerBlock; block < getNumberOfBlocks() && getBlockStart(block) < to; block++) {
+            ByteBuffer segment = segmentOf(block);
+            int blockStart = getBlockStart(block);
+            int start = Math.max(from, blockStart) - blockStart;
+            int end = Math.min(to, getBlockEnd(block)) - blockStart;
+            int row1 = rowStart(block, p1);
+            int row2 = rowStart(block, p2);
+            for (int i = start; i < end; i++) {
+                if (getValue(segment, row1 + i) < getValue(segment, row2 + i)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean isDifference(int p3, int p1, int p2, int from, int to) {
+        for (int block = from / columnsPerBlock; block < getNumberOfBlocks() && getBlockStart(block) < to; block++) {
+            ByteBuffer segment = segmentOf(block);
+            int blockStart = getBlockStart(block);
+            int start = Math.max(from, blockStart) - blockStart;
+            int end = Math.min(to, getBlockEnd(block)) - blockStart;
+            int row1 = rowStart(block, p1);
+            int row2 = rowStart(block, p2);
+            int row3 = rowStart(block, p3);
+            for (int i = start; i < end; i++) {
+                if (getValue(segment, row3 + i) != getValue(segment, row1 + i) - getValue(segment, row2 + i)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+}
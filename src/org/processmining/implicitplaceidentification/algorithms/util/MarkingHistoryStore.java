@@ -0,0 +1,152 @@
+package org.processmining.implicitplaceidentification.algorithms.util;
+
+/**
+ * Stores the marking histories of all replayed variants of a log, place-major.
+ * Every replayed marking is a column: the columns of one variant (initial marking plus one marking per event) are
+ * next to each other, and the row of a place holds its marking history across all variants.
+ * The columns are grouped into blocks. Comparisons that stream over all histories should do so block by block,
+ * since a store only guarantees fast access to the block that is currently being read.
+ */
+public abstract class MarkingHistoryStore implements AutoCloseable {
+    protected final int numberOfPlaces;
+    protected final int numberOfColumns;
+    /**
+     * first column of every variant, the last entry is the number of columns
+     */
+    private final int[] variantStarts;
+
+    /**
+     * @param numberOfPlaces the number of places (rows)
+     * @param variantLengths the number of columns (markings) of every variant
+     */
+    protected MarkingHistoryStore(int numberOfPlaces, int[] variantLengths) {
+        this.numberOfPlaces = numberOfPlaces;
+        this.variantStarts = new int[variantLengths.length + 1];
+        long columns = 0;
+        for (int v = 0; v < variantLengths.length; v++) {
+            variantStarts[v] = (int) columns;
+            columns += variantLengths[v];
+            if (columns > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("More than " + Integer.MAX_VALUE + " markings cannot be stored");
+            }
+        }
+        this.numberOfColumns = (int) columns;
+        variantStarts[variantLengths.length] = numberOfColumns;
+    }
+
+    /**
+     * Returns the number of bytes needed to store a value.
+     *
+     * @param maxNumberOfTokens the largest number of tokens that will be stored
+     * @return 1, 2 or 4
+     */
+    protected static int bytesPerValue(int maxNumberOfTokens) {
+        if (maxNumberOfTokens <= Byte.MAX_VALUE) {
+            return Byte.BYTES;
+        } else if (maxNumberOfTokens <= Short.MAX_VALUE) {
+            return Short.BYTES;
+        }
+        return Integer.BYTES;
+    }
+
+    public int getNumberOfPlaces() {
+        return numberOfPlaces;
+    }
+
+    public int getNumberOfColumns() {
+        return numberOfColumns;
+    }
+
+    public int getNumberOfVariants() {
+        return variantStarts.length - 1;
+    }
+
+    /**
+     * @param variant index of a variant
+     * @return the first column of the variant
+     */
+    public int getVariantStart(int variant) {
+        return variantStarts[variant];
+    }
+
+    /**
+     * @param variant index of a variant
+     * @return the column after the last column of the variant
+     */
+    public int getVariantEnd(int variant) {
+        return variantStarts[variant + 1];
+    }
+
+    public int getNumberOfBlocks() {
+        return 1;
+    }
+
+    /**
+     * @param block index of a block
+     * @return the first column of the block
+     */
+    public int getBlockStart(int block) {
+        return 0;
+    }
+
+    /**
+     * @param block index of a block
+     * @return the column after the last column of the block
+     */
+    public int getBlockEnd(int block) {
+        return numberOfColumns;
+    }
+
+    /**
+     * Writes a marking vector into a column.
+     *
+     * @param column  the column
+     * @param marking the marking vector, one entry per place
+     */
+    public abstract void setColumn(int column, int[] marking);
+
+    public abstract int get(int place, int column);
+
+    /**
+     * Tells the store that the history of the place will not be read anymore, e.g. because the place has been
+     * removed. Stores that can free the memory of single places do so, the history must not be accessed afterwards.
+     *
+     * @param place the place
+     */
+    public void releasePlace(int place) {
+    }
+
+    /**
+     * Releases the resources of the store, e.g. the file of a memory-mapped store. The histories must not be accessed
+     * afterwards.
+     */
+    @Override
+    public void close() {
+    }
+
+    /**
+     * @return true if the marking history of p1 is greater or equal to the marking history of p2 in every column
+     * of [from, to)
+     */
+    public abstract boolean isGreaterOrEqual(int p1, int p2, int from, int to);
+
+    /**
+     * @return true if the marking history of p3 equals the marking history of p1 minus the one of p2 in every column
+     * of [from, to)
+     */
+    public abstract boolean isDifference(int p3, int p1, int p2, int from, int to);
+
+    /**
+     * @return true if the marking history of p1 is greater or equal to the marking history of p2 in every column
+     */
+    public boolean isGreaterOrEqual(int p1, int p2) {
+        return isGreaterOrEqual(p1, p2, 0, numberOfColumns);
+    }
+
+    /**
+     * @return true if the marking history of p3 equals the marking history of p1 minus the one of p2 in every column
+     */
+    public boolean isDifference(int p3, int p1, int p2) {
+        return isDifference(p3, p1, p2, 0, numberOfColumns);
+    }
+}
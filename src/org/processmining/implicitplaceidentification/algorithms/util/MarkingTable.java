@@ -0,0 +1,144 @@
+package org.processmining.implicitplaceidentification.algorithms.util;
+
+import java.util.Arrays;
+
+/**
+ * A set of marking vectors with dense ids in insertion order, implemented as an open-addressing hash table with
+ * linear probing. The markings are stored one after another in a single int array and the table only holds ids, so
+ * no objects are allocated per marking. Hashes are passed in, e.g. the incrementally updated
+ * {@link IndexedPetrinet#hash(int[])}, and stored per id.
+ */
+public class MarkingTable {
+    private static final int EMPTY = -1;
+
+    private final int numberOfPlaces;
+    /**
+     * the marking with id i is stored at [i * numberOfPlaces, (i + 1) * numberOfPlaces)
+     */
+    private int[] markings;
+    private long[] hashes;
+    /**
+     * the ids of the markings by their hash, EMPTY for free slots. The length is a power of two.
+     */
+    private int[] slots;
+    private int size;
+
+    public MarkingTable(int numberOfPlaces) {
+        this.numberOfPlaces = numberOfPlaces;
+        markings = new int[16 * numberOfPlaces];
+        hashes = new long[16];
+        slots = new int[32];
+        Arrays.fill(slots, EMPTY);
+    }
+
+    /**
+     * Adds a marking if it is not in the table yet.
+     *
+     * @param m    the marking vector, it is copied
+     * @param hash the hash of the marking
+     * @return the id of the marking if it has been added, or -(id + 1) if it has already been in the table
+     */
+    public int add(int[] m, long hash) {
+        int slot = findSlot(m, hash);
+        if (slots[slot] != EMPTY) {
+            return -slots[slot] - 1;
+        }
+        if (size == hashes.length) {
+            grow();
+            slot = findSlot(m, hash);
+        }
+        System.arraycopy(m, 0, markings, size * numberOfPlaces, numberOfPlaces);
+        hashes[size] = hash;
+        slots[slot] = size;
+        return size++;
+    }
+
+    /**
+     * @param m    a marking vector
+     * @param hash the hash of the marking
+     * @return the id of the marking, or -1 if it is not in the table
+     */
+    public int find(int[] m, long hash) {
+        return slots[findSlot(m, hash)];
+    }
+
+    /**
+     * Copies a marking into a buffer.
+     *
+     * @param id the id of the marking
+     * @param m  buffer for the marking vector
+     */
+    public void get(int id, int[] m) {
+        System.arraycopy(markings, id * numberOfPlaces, m, 0, numberOfPlaces);
+    }
+
+    /**
+     * @param id    the id of a marking
+     * @param place the index of a place
+     * @return the number of tokens in the place in the marking
+     */
+    public int get(int id, int place) {
+        return markings[id * numberOfPlaces + place];
+    }
+
+    /**
+     * @param id the id of a marking
+     * @return the hash the marking has been added with
+     */
+    public long getHash(int id) {
+        return hashes[id];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the slot of the marking, or the free slot where it would be inserted
+     */
+    private int findSlot(int[] m, long hash) {
+        int mask = slots.length - 1;
+        for (int slot = spread(hash) & mask; ; slot = (slot + 1) & mask) {
+            int id = slots[slot];
+            if (id == EMPTY || hashes[id] == hash && isMarking(id, m)) {
+                return slot;
+            }
+        }
+    }
+
+    private boolean isMarking(int id, int[] m) {
+        int offset = id * numberOfPlaces;
+        for (int p = 0; p < numberOfPlaces; p++) {
+            if (markings[offset + p] != m[p]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Doubles the capacity, the table always has at least twice as many slots as markings.
+     */
+    private void grow() {
+        int capacity = hashes.length * 2;
+        if ((long) capacity * numberOfPlaces > Integer.MAX_VALUE - 8) {
+            throw new IllegalStateException("Too many markings for a marking table: " + size);
+        }
+        markings = Arrays.copyOf(markings, capacity * numberOfPlaces);
+        hashes = Arrays.copyOf(hashes, capacity);
+        slots = new int[capacity * 2];
+        Arrays.fill(slots, EMPTY);
+        int mask = slots.length - 1;
+        for (int id = 0; id < size; id++) {
+            int slot = spread(hashes[id]) & mask;
+            while (slots[slot] != EMPTY) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = id;
+        }
+    }
+
+    private static int spread(long hash) {
+        return (int) (hash ^ (hash >>> 32));
+    }
+}
@@ -0,0 +1,190 @@
+package org.processmining.implicitplaceidentification.algorithms.util;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The replay of a log on a net, computed once and shared by the replay-based checks on subnets that consist of some
+ * of the places and transitions of the net, as in decompose and conquer.
+ * <p>
+ * The number of tokens in a place only depends on the transitions fired so far, not on the other places. Every
+ * variant is therefore played once on the whole net, firing each transition regardless of whether it is enabled, and
+ * the histories of all places are stored together with the transitions it uses and the places in which it lacks
+ * tokens at some point. A variant fits a subnet iff the subnet contains all of its transitions and none of these
+ * places, and then its histories in the subnet are the rows of the subnet's places, so no variant has to be mapped or
+ * replayed again for a subnet.
+ */
+public class ReplayContext {
+    private final IndexedPetrinet net;
+    /**
+     * marking histories of all variants whose activities are transitions of the net. The histories of a place are
+     * only meaningful for the variants that do not lack tokens in it.
+     */
+    private final MarkingHistoryStore histories;
+    private final BitSet[] transitionsOfVariant;
+    private final BitSet[] placesLackingTokensInVariant;
+
+    /**
+     * @param net      the net
+     * @param m0       the initial marking vector
+     * @param variants the variants of the log, activities are mapped to the transitions with the same label
+     */
+    public ReplayContext(IndexedPetrinet net, int[] m0, VariantCache variants) {
+        this.net = net;
+        Map<String, Integer> transitionOfLabel = new HashMap<>();
+        net.getTransitionToIndexMap().forEach((transition, t) -> transitionOfLabel.put(transition.getLabel(), t));
+        String[] labels = variants.getLabels();
+
+        // variants with activities that are not in the net do not fit any subnet
+        List<int[]> transitionSequences = new ArrayList<>();
+        for (int v = 0; v < variants.getNumberOfVariants(); v++) {
+            int[] variant = variants.getVariant(v);
+            int[] transitions = new int[variant.length];
+            boolean isInNet = true;
+            for (int i = 0; i < variant.length && isInNet; i++) {
+                Integer t = transitionOfLabel.get(labels[variant[i]]);
+                isInNet = t != null;
+                transitions[i] = isInNet ? t : -1;
+            }
+            if (isInNet) {
+                transitionSequences.add(transitions);
+            }
+        }
+
+        int numberOfVariants = transitionSequences.size();
+        transitionsOfVariant = new BitSet[numberOfVariants];
+        placesLackingTokensInVariant = new BitSet[numberOfVariants];
+        int[] variantLengths = new int[numberOfVariants];
+        int maxNumberOfTokens = 0;
+        for (int v = 0; v < numberOfVariants; v++) {
+            transitionsOfVariant[v] = new BitSet();
+            placesLackingTokensInVariant[v] = new BitSet();
+            int[] m = m0.clone();
+            for (int t : transitionSequences.get(v)) {
+                transitionsOfVariant[v].set(t);
+                int[] inputs = net.getInputPlaces(t);
+                int[] weights = net.getInputWeights(t);
+                for (int i = 0; i < inputs.length; i++) {
+                    if (m[inputs[i]] < weights[i]) {
+                        placesLackingTokensInVariant[v].set(inputs[i]);
+                    }
+                }
+                net.fire(m, t);
+                for (int tokens : m) {
+                    maxNumberOfTokens = Math.max(maxNumberOfTokens, tokens);
+                }
+            }
+            variantLengths[v] = transitionSequences.get(v).length + 1;
+        }
+
+        histories = new ArrayMarkingHistoryStore(net.getNumberOfPlaces(), variantLengths,
+                Math.max(maxNumberOfTokens, 0));
+        int[] marking = new int[net.getNumberOfPlaces()];
+        for (int v = 0; v < numberOfVariants; v++) {
+            int[] m = m0.clone();
+            int column = histories.getVariantStart(v);
+            histories.setColumn(column, m);
+            for (int t : transitionSequences.get(v)) {
+                net.fire(m, t);
+                // places that lack tokens are never read for this variant, they are stored as empty
+                for (int p = 0; p < m.length; p++) {
+                    marking[p] = Math.max(m[p], 0);
+                }
+                histories.setColumn(++column, marking);
+            }
+        }
+    }
+
+    public IndexedPetrinet getNet() {
+        return net;
+    }
+
+    /**
+     * @return the number of variants whose activities are transitions of the net
+     */
+    public int getNumberOfVariants() {
+        return transitionsOfVariant.length;
+    }
+
+    /**
+     * @param places      the places of the subnet
+     * @param transitions the transitions of the subnet
+     * @return the replay of the log on the subnet
+     */
+    public Subnet restrictTo(BitSet places, BitSet transitions) {
+        return new Subnet(places, transitions);
+    }
+
+    /**
+     * The replay of the log on a subnet, restricted to the variants that fit it.
+     */
+    public class Subnet {
+        private final BitSet places;
+        private final int[] fittingVariants;
+
+        private Subnet(BitSet places, BitSet transitions) {
+            this.places = (BitSet) places.clone();
+            List<Integer> fitting = new ArrayList<>();
+            for (int v = 0; v < transitionsOfVariant.length; v++) {
+                BitSet transitionsOutsideSubnet = (BitSet) transitionsOfVariant[v].clone();
+                transitionsOutsideSubnet.andNot(transitions);
+                if (transitionsOutsideSubnet.isEmpty() && !placesLackingTokensInVariant[v].intersects(places)) {
+                    fitting.add(v);
+                }
+            }
+            fittingVariants = fitting.stream().mapToInt(Integer::intValue).toArray();
+        }
+
+        /**
+         * @return the number of variants that fit the subnet
+         */
+        public int getNumberOfFittingVariants() {
+            return fittingVariants.length;
+        }
+
+        /**
+         * Compares the marking histories of the place with those of all other places of the subnet, like
+         * {@link org.processmining.implicitplaceidentification.algorithms.ReplayBasedImplicitPlaceFinder#getPlacesImplyingP}
+         * on the subnet.
+         *
+         * @param p1 a place of the subnet
+         * @return all places p2 and p3 of the subnet with p1 = p2 + p3 in the fitting variants, empty if p1 is not
+         * implicit in the subnet
+         */
+        public BitSet getPlacesImplying(int p1) {
+            BitSet implyingPlaces = new BitSet();
+            for (int p2 = places.nextSetBit(0); p2 >= 0; p2 = places.nextSetBit(p2 + 1)) {
+                if (p2 == p1 || !isGreaterOrEqual(p1, p2)) {
+                    continue;
+                }
+                for (int p3 = places.nextSetBit(0); p3 >= 0; p3 = places.nextSetBit(p3 + 1)) {
+                    if (p3 != p1 && p3 != p2 && isDifference(p3, p1, p2)) {
+                        implyingPlaces.set(p3);
+                    }
+                }
+            }
+            return implyingPlaces;
+        }
+
+        private boolean isGreaterOrEqual(int p1, int p2) {
+            for (int v : fittingVariants) {
+                if (!histories.isGreaterOrEqual(p1, p2, histories.getVariantStart(v), histories.getVariantEnd(v))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private boolean isDifference(int p3, int p1, int p2) {
+            for (int v : fittingVariants) {
+                if (!histories.isDifference(p3, p1, p2, histories.getVariantStart(v), histories.getVariantEnd(v))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
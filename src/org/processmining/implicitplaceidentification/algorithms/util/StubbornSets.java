@@ -0,0 +1,254 @@
+package org.processmining.implicitplaceidentification.algorithms.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Computes stubborn sets for the search of a firing sequence that shows that a place p is not implicit, i.e. a
+ * reachable marking in which an output transition of p is enabled except for the tokens in p. The net is explored
+ * with the marking bound of the language generation, which does not apply to p.
+ * <p>
+ * A stubborn set contains an up set, i.e. transitions of which one has to fire before such a marking can be reached,
+ * and is closed under the usual conditions: for an enabled transition, all transitions that can disable it or can be
+ * disabled by it are included, and for a disabled transition, all transitions that can remove the reason it is
+ * disabled. Firing only the enabled transitions of the stubborn sets then still reaches such a marking if one is
+ * reachable, with a firing sequence of the same length, but skips the interleavings of independent transitions.
+ */
+public class StubbornSets {
+    private final IndexedPetrinet net;
+    private final int place;
+    private final int markingBound;
+    /**
+     * per place the transitions that increase or decrease its number of tokens, and that consume from it or produce
+     * into it
+     */
+    private final int[][] increasing;
+    private final int[][] decreasing;
+    private final int[][] consuming;
+    private final int[][] producing;
+    private final int[] outputTransitionsOfPlace;
+    /**
+     * the stubborn set that is being computed, as flags and as work list
+     */
+    private final boolean[] inStubbornSet;
+    private final int[] workList;
+    private int size;
+
+    /**
+     * @param net          the net
+     * @param place        the index of the place that is checked
+     * @param markingBound the bound of all other places, see {@link IndexedPetrinet#isWithinBound(int[], int, int, int)}
+     */
+    public StubbornSets(IndexedPetrinet net, int place, int markingBound) {
+        this.net = net;
+        this.place = place;
+        this.markingBound = markingBound;
+        int numberOfPlaces = net.getNumberOfPlaces();
+        int numberOfTransitions = net.getNumberOfTransitions();
+
+        List<List<Integer>> increasingList = newLists(numberOfPlaces);
+        List<List<Integer>> decreasingList = newLists(numberOfPlaces);
+        List<List<Integer>> consumingList = newLists(numberOfPlaces);
+        List<List<Integer>> producingList = newLists(numberOfPlaces);
+        for (int t = 0; t < numberOfTransitions; t++) {
+            for (int p : net.getInputPlaces(t)) {
+                consumingList.get(p).add(t);
+            }
+            for (int p : net.getOutputPlaces(t)) {
+                producingList.get(p).add(t);
+            }
+            int[] effectPlaces = net.getEffectPlaces(t);
+            int[] effects = net.getEffects(t);
+            for (int i = 0; i < effectPlaces.length; i++) {
+                (effects[i] > 0 ? increasingList : decreasingList).get(effectPlaces[i]).add(t);
+            }
+        }
+        increasing = toArrays(increasingList);
+        decreasing = toArrays(decreasingList);
+        consuming = toArrays(consumingList);
+        producing = toArrays(producingList);
+        outputTransitionsOfPlace = consuming[place];
+
+        inStubbornSet = new boolean[numberOfTransitions];
+        workList = new int[numberOfTransitions];
+    }
+
+    /**
+     * @param m a marking vector
+     * @return an output transition of the place that is enabled in m except for the tokens in the place, or -1
+     */
+    public int findDivergingTransition(int[] m) {
+        for (int t : outputTransitionsOfPlace) {
+            if (isEnabledExceptForPlace(m, t) && m[place] < weightOfPlace(t)) {
+                return t;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Computes a stubborn set for a marking in which no transition diverges, see
+     * {@link #findDivergingTransition(int[])}.
+     *
+     * @param m       a marking vector
+     * @param enabled buffer for the result, with room for all transitions
+     * @return the number of enabled transitions of the stubborn set, which are written to the buffer in ascending
+     * order
+     */
+    public int computeEnabledStubbornTransitions(int[] m, int[] enabled) {
+        Arrays.fill(inStubbornSet, false);
+        size = 0;
+        addUpSet(m);
+        for (int i = 0; i < size; i++) {
+            int t = workList[i];
+            if (isEnabled(m, t)) {
+                addConflictingTransitions(t);
+            } else {
+                addEnablingTransitions(m, t);
+            }
+        }
+
+        int numberOfEnabled = 0;
+        for (int t = 0; t < inStubbornSet.length; t++) {
+            if (inStubbornSet[t] && isEnabled(m, t)) {
+                enabled[numberOfEnabled++] = t;
+            }
+        }
+        return numberOfEnabled;
+    }
+
+    /**
+     * @return true if t is enabled and within the bound of all places except the checked one
+     */
+    public boolean isEnabled(int[] m, int t) {
+        return net.isEnabled(m, t) && net.isWithinBound(m, t, markingBound, place);
+    }
+
+    /**
+     * For every output transition of the place, one of its conditions for diverging is false. A transition that can
+     * make this condition true has to fire before the transition can diverge.
+     */
+    private void addUpSet(int[] m) {
+        for (int t : outputTransitionsOfPlace) {
+            int[] inputs = net.getInputPlaces(t);
+            int[] weights = net.getInputWeights(t);
+            int missingInput = -1;
+            for (int i = 0; i < inputs.length && missingInput < 0; i++) {
+                if (inputs[i] != place && m[inputs[i]] < weights[i]) {
+                    missingInput = inputs[i];
+                }
+            }
+            if (missingInput >= 0) {
+                addAll(increasing[missingInput]);
+                continue;
+            }
+            int exceededOutput = findExceededOutput(m, t);
+            if (exceededOutput >= 0) {
+                addAll(decreasing[exceededOutput]);
+            } else {
+                // t is enabled with the tokens in the place, they have to be consumed first
+                addAll(decreasing[place]);
+            }
+        }
+    }
+
+    /**
+     * Adds the transitions that can disable the enabled transition t or that t can disable.
+     */
+    private void addConflictingTransitions(int t) {
+        for (int p : net.getInputPlaces(t)) {
+            addAll(decreasing[p]);
+        }
+        for (int p : net.getOutputPlaces(t)) {
+            if (p != place) {
+                addAll(increasing[p]);
+            }
+        }
+        int[] effectPlaces = net.getEffectPlaces(t);
+        int[] effects = net.getEffects(t);
+        for (int i = 0; i < effectPlaces.length; i++) {
+            if (effects[i] < 0) {
+                addAll(consuming[effectPlaces[i]]);
+            } else if (effectPlaces[i] != place) {
+                addAll(producing[effectPlaces[i]]);
+            }
+        }
+    }
+
+    /**
+     * Adds the transitions that can remove one reason why t is disabled.
+     */
+    private void addEnablingTransitions(int[] m, int t) {
+        int[] inputs = net.getInputPlaces(t);
+        int[] weights = net.getInputWeights(t);
+        for (int i = 0; i < inputs.length; i++) {
+            if (m[inputs[i]] < weights[i]) {
+                addAll(increasing[inputs[i]]);
+                return;
+            }
+        }
+        int exceededOutput = findExceededOutput(m, t);
+        if (exceededOutput >= 0) {
+            addAll(decreasing[exceededOutput]);
+        }
+    }
+
+    /**
+     * @return an output place other than the checked place that would exceed the bound if t fired, or -1
+     */
+    private int findExceededOutput(int[] m, int t) {
+        for (int p : net.getOutputPlaces(t)) {
+            if (p != place && net.tokensAfterConsumption(m, t, p) >= markingBound) {
+                return p;
+            }
+        }
+        return -1;
+    }
+
+    private boolean isEnabledExceptForPlace(int[] m, int t) {
+        int[] inputs = net.getInputPlaces(t);
+        int[] weights = net.getInputWeights(t);
+        for (int i = 0; i < inputs.length; i++) {
+            if (inputs[i] != place && m[inputs[i]] < weights[i]) {
+                return false;
+            }
+        }
+        return net.isWithinBound(m, t, markingBound, place);
+    }
+
+    private int weightOfPlace(int t) {
+        int[] inputs = net.getInputPlaces(t);
+        for (int i = 0; i < inputs.length; i++) {
+            if (inputs[i] == place) {
+                return net.getInputWeights(t)[i];
+            }
+        }
+        return 0;
+    }
+
+    private void addAll(int[] transitions) {
+        for (int t : transitions) {
+            if (!inStubbornSet[t]) {
+                inStubbornSet[t] = true;
+                workList[size++] = t;
+            }
+        }
+    }
+
+    private static List<List<Integer>> newLists(int n) {
+        List<List<Integer>> lists = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            lists.add(new ArrayList<>());
+        }
+        return lists;
+    }
+
+    private static int[][] toArrays(List<List<Integer>> lists) {
+        int[][] arrays = new int[lists.size()][];
+        for (int i = 0; i < arrays.length; i++) {
+            arrays[i] = lists.get(i).stream().mapToInt(Integer::intValue).toArray();
+        }
+        return arrays;
+    }
+}
@@ -0,0 +1,220 @@
+package org.processmining.implicitplaceidentification.algorithms.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * The t-nets induced by the transitions at choices of a net, computed together in one pass.
+ * <p>
+ * The t-net induced by a transition t contains t, the output places of t that have exactly one input and one output
+ * transition, and recursively the t-nets induced by the output transitions of these places, see
+ * {@link org.processmining.implicitplaceidentification.algorithms.TNetDecomposition#getInducedTNetNodes}. It is the
+ * set of nodes that are reachable from t in the graph of transitions linked by such places. The strongly connected
+ * components of this graph are computed by Tarjan's algorithm with an explicit stack, and since a component is
+ * completed after all components reachable from it, its t-net is the union of its own nodes and the t-nets of its
+ * successors, which are shared as bit sets instead of being recomputed per transition.
+ */
+public class TNets {
+    private final IndexedPetrinet net;
+    private final int[] choicePlaces;
+    /**
+     * per place its output transitions, and per transition the output transitions of its output places that have
+     * exactly one input and one output transition
+     */
+    private final int[][] outputTransitionsOfPlace;
+    private final int[][] successorsInTNet;
+    /**
+     * per transition the places and transitions of its t-net, null for transitions that are not in the t-net of a
+     * transition at a choice. Transitions in the same strongly connected component share their bit sets.
+     */
+    private final BitSet[] placesOfTNet;
+    private final BitSet[] transitionsOfTNet;
+
+    public TNets(IndexedPetrinet net) {
+        this.net = net;
+        int numberOfPlaces = net.getNumberOfPlaces();
+        int numberOfTransitions = net.getNumberOfTransitions();
+
+        int[] numberOfInputTransitions = new int[numberOfPlaces];
+        List<List<Integer>> outputTransitions = new ArrayList<>(numberOfPlaces);
+        for (int p = 0; p < numberOfPlaces; p++) {
+            outputTransitions.add(new ArrayList<>());
+        }
+        for (int t = 0; t < numberOfTransitions; t++) {
+            for (int p : net.getInputPlaces(t)) {
+                outputTransitions.get(p).add(t);
+            }
+            for (int p : net.getOutputPlaces(t)) {
+                numberOfInputTransitions[p]++;
+            }
+        }
+        outputTransitionsOfPlace = new int[numberOfPlaces][];
+        for (int p = 0; p < numberOfPlaces; p++) {
+            outputTransitionsOfPlace[p] = outputTransitions.get(p).stream().mapToInt(Integer::intValue).toArray();
+        }
+        successorsInTNet = new int[numberOfTransitions][];
+        for (int t = 0; t < numberOfTransitions; t++) {
+            successorsInTNet[t] = Arrays.stream(net.getOutputPlaces(t))
+                    .filter(p -> isLinking(p, numberOfInputTransitions))
+                    .map(p -> outputTransitionsOfPlace[p][0])
+                    .toArray();
+        }
+        choicePlaces = IntStream.range(0, numberOfPlaces)
+                .filter(p -> outputTransitionsOfPlace[p].length > 1)
+                .toArray();
+
+        placesOfTNet = new BitSet[numberOfTransitions];
+        transitionsOfTNet = new BitSet[numberOfTransitions];
+        computeTNets(numberOfInputTransitions);
+    }
+
+    /**
+     * @return the places with more than one output transition
+     */
+    public int[] getChoicePlaces() {
+        return choicePlaces.clone();
+    }
+
+    /**
+     * @return the output transitions of the place
+     */
+    public int[] getTransitionsAtChoice(int place) {
+        return outputTransitionsOfPlace[place].clone();
+    }
+
+    /**
+     * @param t a transition at a choice
+     * @return the places of the t-net induced by t
+     */
+    public BitSet getPlaces(int t) {
+        return (BitSet) getTNet(placesOfTNet, t).clone();
+    }
+
+    /**
+     * @param t a transition at a choice
+     * @return the transitions of the t-net induced by t
+     */
+    public BitSet getTransitions(int t) {
+        return (BitSet) getTNet(transitionsOfTNet, t).clone();
+    }
+
+    /**
+     * @param transitions transitions at a choice
+     * @return the output places of the transitions of their t-nets that are not part of the t-nets
+     */
+    public BitSet getSuccessorPlaces(int[] transitions) {
+        BitSet places = new BitSet();
+        BitSet transitionsOfTNets = new BitSet();
+        for (int t : transitions) {
+            places.or(getTNet(placesOfTNet, t));
+            transitionsOfTNets.or(getTNet(transitionsOfTNet, t));
+        }
+        BitSet successorPlaces = new BitSet();
+        for (int t = transitionsOfTNets.nextSetBit(0); t >= 0; t = transitionsOfTNets.nextSetBit(t + 1)) {
+            for (int p : net.getOutputPlaces(t)) {
+                if (!places.get(p)) {
+                    successorPlaces.set(p);
+                }
+            }
+        }
+        return successorPlaces;
+    }
+
+    private static BitSet getTNet(BitSet[] tNets, int t) {
+        if (tNets[t] == null) {
+            throw new IllegalArgumentException("Transition " + t + " is not in the t-net of a transition at a choice");
+        }
+        return tNets[t];
+    }
+
+    private boolean isLinking(int p, int[] numberOfInputTransitions) {
+        return numberOfInputTransitions[p] == 1 && outputTransitionsOfPlace[p].length == 1;
+    }
+
+    /**
+     * Runs Tarjan's algorithm from the transitions at choices and builds the t-net of every completed component.
+     */
+    private void computeTNets(int[] numberOfInputTransitions) {
+        int n = net.getNumberOfTransitions();
+        int[] index = new int[n];
+        int[] lowLink = new int[n];
+        Arrays.fill(index, -1);
+        boolean[] onStack = new boolean[n];
+        int[] stack = new int[n];
+        int stackSize = 0;
+        int[] callStack = new int[n];
+        int[] nextSuccessor = new int[n];
+        int nextIndex = 0;
+        for (int choicePlace : choicePlaces) {
+            for (int root : outputTransitionsOfPlace[choicePlace]) {
+                if (index[root] >= 0) {
+                    continue;
+                }
+                int callDepth = 0;
+                callStack[0] = root;
+                index[root] = lowLink[root] = nextIndex++;
+                stack[stackSize++] = root;
+                onStack[root] = true;
+                while (callDepth >= 0) {
+                    int v = callStack[callDepth];
+                    if (nextSuccessor[v] < successorsInTNet[v].length) {
+                        int w = successorsInTNet[v][nextSuccessor[v]++];
+                        if (index[w] < 0) {
+                            index[w] = lowLink[w] = nextIndex++;
+                            stack[stackSize++] = w;
+                            onStack[w] = true;
+                            callStack[++callDepth] = w;
+                        } else if (onStack[w]) {
+                            lowLink[v] = Math.min(lowLink[v], index[w]);
+                        }
+                        continue;
+                    }
+                    if (lowLink[v] == index[v]) {
+                        int start = stackSize;
+                        do {
+                            start--;
+                            onStack[stack[start]] = false;
+                        } while (stack[start] != v);
+                        addTNet(stack, start, stackSize, numberOfInputTransitions);
+                        stackSize = start;
+                    }
+                    callDepth--;
+                    if (callDepth >= 0) {
+                        int parent = callStack[callDepth];
+                        lowLink[parent] = Math.min(lowLink[parent], lowLink[v]);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Builds the t-net of the component stack[start..end), whose successor components are complete.
+     */
+    private void addTNet(int[] stack, int start, int end, int[] numberOfInputTransitions) {
+        BitSet places = new BitSet();
+        BitSet transitions = new BitSet();
+        for (int i = start; i < end; i++) {
+            int t = stack[i];
+            transitions.set(t);
+            for (int p : net.getOutputPlaces(t)) {
+                if (isLinking(p, numberOfInputTransitions)) {
+                    places.set(p);
+                }
+            }
+            for (int successor : successorsInTNet[t]) {
+                if (transitionsOfTNet[successor] != null) {
+                    places.or(placesOfTNet[successor]);
+                    transitions.or(transitionsOfTNet[successor]);
+                }
+            }
+        }
+        for (int i = start; i < end; i++) {
+            placesOfTNet[stack[i]] = places;
+            transitionsOfTNet[stack[i]] = transitions;
+        }
+    }
+}
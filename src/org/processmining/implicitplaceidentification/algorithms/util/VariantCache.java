@@ -0,0 +1,421 @@
+package org.processmining.implicitplaceidentification.algorithms.util;
+
+import org.deckfour.xes.model.XEvent;
+import org.deckfour.xes.model.XLog;
+import org.deckfour.xes.model.XTrace;
+
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * The variants of an event log in a compact form that can be written to and loaded from a binary file, so the
+ * variants of a large log only have to be extracted once.
+ * Activity labels are interned into a label table, a variant is a sequence of label indices, and every variant is
+ * stored once together with the number of traces that follow it. The cache is keyed by a content hash of the log.
+ * <p>
+ * File format: the magic number, the format version, the content hash and then, all as varints, the number of labels,
+ * every label as length and UTF-8 bytes, the number of variants, and every variant as multiplicity, length and label
+ * indices.
+ */
+public class VariantCache {
+    private static final int MAGIC = 0x49505643;
+    private static final int VERSION = 1;
+    private static final String FILE_EXTENSION = ".variants";
+
+    private final String contentHash;
+    private final String[] labels;
+    private final int[][] variants;
+    private final int[] multiplicities;
+
+    VariantCache(String contentHash, String[] labels, int[][] variants, int[] multiplicities) {
+        this.contentHash = contentHash;
+        this.labels = labels;
+        this.variants = variants;
+        this.multiplicities = multiplicities;
+    }
+
+    /**
+     * Extracts the variants of a log.
+     *
+     * @param log the event log
+     * @return the variants in the order of their first trace, keyed by {@link #contentHash(XLog)}
+     */
+    public static VariantCache fromLog(XLog log) {
+        return fromLog(log, contentHash(log));
+    }
+
+    /**
+     * Extracts the variants of a log for in-memory use, without hashing the whole log. The variants cannot be written
+     * to a cache file.
+     *
+     * @param log the event log
+     * @return the variants in the order of their first trace, without content hash
+     */
+    public static VariantCache fromLogWithoutHash(XLog log) {
+        return fromLog(log, null);
+    }
+
+    private static VariantCache fromLog(XLog log, String contentHash) {
+        List<String> labelTable = new ArrayList<>();
+        HashMap<String, Integer> labelIndices = new HashMap<>();
+        LinkedHashMap<List<Integer>, Integer> variantFrequencies = new LinkedHashMap<>();
+        for (XTrace trace : log) {
+            List<Integer> variant = new ArrayList<>(trace.size());
+            for (XEvent xEvent : trace) {
+                variant.add(labelIndices.computeIfAbsent(xEvent.getAttributes().get("concept:name").toString(), l -> {
+                    labelTable.add(l);
+                    return labelTable.size() - 1;
+                }));
+            }
+            variantFrequencies.merge(variant, 1, Integer::sum);
+        }
+
+        int[][] variants = new int[variantFrequencies.size()][];
+        int[] multiplicities = new int[variantFrequencies.size()];
+        int v = 0;
+        for (Map.Entry<List<Integer>, Integer> entry : variantFrequencies.entrySet()) {
+            variants[v] = entry.getKey().stream().mapToInt(Integer::intValue).toArray();
+            multiplicities[v] = entry.getValue();
+            v++;
+        }
+        return new VariantCache(contentHash, labelTable.toArray(new String[0]), variants, multiplicities);
+    }
+
+    /**
+     * Loads the variants of a log from a cache directory, or extracts and caches them if the log has not been cached
+     * before. The log is still read once to compute its content hash.
+     *
+     * @param cacheDirectory the directory with the cache files
+     * @param log            the event log
+     * @return the variants of the log
+     */
+    public static VariantCache loadOrExtract(Path cacheDirectory, XLog log) {
+        String hash = contentHash(log);
+        Path file = cacheDirectory.resolve(hash + FILE_EXTENSION);
+        VariantCache cached = loadIfValid(file, hash);
+        if (cached != null) {
+            return cached;
+        }
+        VariantCache cache = fromLog(log, hash);
+        cache.write(file);
+        return cache;
+    }
+
+    /**
+     * Loads the variants of a log file from a cache directory, or parses the log and caches its variants if the file
+     * has not been cached before. Since the cache is keyed by the hash of the file, a cached log is not parsed at all.
+     *
+     * @param cacheDirectory the directory with the cache files
+     * @param logFile        the log file, e.g. an XES file
+     * @param parser         parses the log file, only called if the log has not been cached yet
+     * @return the variants of the log
+     */
+    public static VariantCache loadOrExtract(Path cacheDirectory, Path logFile, Function<Path, XLog> parser) {
+        String hash = contentHash(logFile);
+        Path file = cacheDirectory.resolve(hash + FILE_EXTENSION);
+        VariantCache cached = loadIfValid(file, hash);
+        if (cached != null) {
+            return cached;
+        }
+        VariantCache cache = fromLog(parser.apply(logFile), hash);
+        cache.write(file);
+        return cache;
+    }
+
+    /**
+     * Loads the variants of an XES file from a cache directory, or reads them with {@link XesVariantReader} and caches
+     * them if the file has not been cached before. The log is never materialized as an XLog.
+     *
+     * @param cacheDirectory the directory with the cache files
+     * @param xesFile        an .xes or .xes.gz file
+     * @return the variants of the log
+     */
+    public static VariantCache loadOrRead(Path cacheDirectory, Path xesFile) {
+        String hash = contentHash(xesFile);
+        Path file = cacheDirectory.resolve(hash + FILE_EXTENSION);
+        VariantCache cached = loadIfValid(file, hash);
+        if (cached != null) {
+            return cached;
+        }
+        VariantCache cache = XesVariantReader.read(xesFile);
+        cache.write(file);
+        return cache;
+    }
+
+    /**
+     * Computes a SHA-256 hash over the activity labels of all traces of the log.
+     *
+     * @param log the event log
+     * @return the hash as hex string
+     */
+    public static String contentHash(XLog log) {
+        MessageDigest digest = sha256();
+        for (XTrace trace : log) {
+            for (XEvent xEvent : trace) {
+                digest.update(xEvent.getAttributes().get("concept:name").toString().getBytes(StandardCharsets.UTF_8));
+                // separates labels
+                digest.update((byte) 0);
+            }
+            // separates traces
+            digest.update((byte) 1);
+        }
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Computes a SHA-256 hash over the bytes of a file.
+     *
+     * @param file a file
+     * @return the hash as hex string
+     */
+    public static String contentHash(Path file) {
+        MessageDigest digest = sha256();
+        try (InputStream in = new DigestInputStream(new BufferedInputStream(Files.newInputStream(file)), digest)) {
+            byte[] buffer = new byte[1 << 16];
+            while (in.read(buffer) != -1) {
+                // the digest is updated while reading
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read " + file, e);
+        }
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Loads a cache file if it exists and has been written for the given content hash. A file whose name matches the
+     * hash but whose content does not, e.g. because another cache file has been renamed or copied over it, is
+     * stale and is overwritten by the caller, and so is a file of another format version or a truncated file.
+     *
+     * @return the variants, or null if the file does not exist or is stale
+     */
+    private static VariantCache loadIfValid(Path file, String contentHash) {
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        VariantCache cache;
+        try {
+            cache = load(file);
+        } catch (IllegalArgumentException e) {
+            System.out.println("Ignoring stale variant cache: " + e.getMessage());
+            return null;
+        }
+        if (!contentHash.equals(cache.contentHash)) {
+            System.out.println("Ignoring stale variant cache " + file + " with content hash " + cache.contentHash);
+            return null;
+        }
+        return cache;
+    }
+
+    /**
+     * Loads variants that have been written with {@link #write(Path)}. The file is memory-mapped and decoded. The
+     * content hash stored in the file is not checked against anything, the loadOr... methods only use files that
+     * have been written for the hash of the requested log.
+     *
+     * @param file the cache file
+     * @return the variants
+     * @throws IllegalArgumentException if the file is not a variant cache file of the current version, or if it is
+     *                                  truncated or corrupt
+     */
+    public static VariantCache load(Path file) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                throw new IllegalArgumentException(file + " is not a variant cache file of version " + VERSION);
+            }
+            String contentHash = readString(buffer, file);
+
+            String[] labels = new String[readLength(buffer, file)];
+            for (int l = 0; l < labels.length; l++) {
+                labels[l] = readString(buffer, file);
+            }
+            int numberOfVariants = readLength(buffer, file);
+            int[][] variants = new int[numberOfVariants][];
+            int[] multiplicities = new int[numberOfVariants];
+            for (int v = 0; v < numberOfVariants; v++) {
+                multiplicities[v] = readVarint(buffer);
+                variants[v] = new int[readLength(buffer, file)];
+                for (int i = 0; i < variants[v].length; i++) {
+                    variants[v][i] = readVarint(buffer);
+                    if (variants[v][i] < 0 || variants[v][i] >= labels.length) {
+                        throw corrupt(file);
+                    }
+                }
+            }
+            return new VariantCache(contentHash, labels, variants, multiplicities);
+        } catch (BufferUnderflowException e) {
+            throw corrupt(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not load variants from " + file, e);
+        }
+    }
+
+    /**
+     * Writes the variants to a file. The file is written to a temporary file first and then moved, so concurrent
+     * readers never see a partially written cache.
+     *
+     * @param file the cache file
+     * @throws IllegalStateException if the variants have been extracted without content hash
+     */
+    public void write(Path file) {
+        if (contentHash == null) {
+            throw new IllegalStateException("Variants without content hash cannot be cached");
+        }
+        try {
+            Path parent = file.toAbsolutePath().getParent();
+            Files.createDirectories(parent);
+            Path temporaryFile = Files.createTempFile(parent, "variants", ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporaryFile)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                writeString(out, contentHash);
+                writeVarint(out, labels.length);
+                for (String label : labels) {
+                    writeString(out, label);
+                }
+                writeVarint(out, variants.length);
+                for (int v = 0; v < variants.length; v++) {
+                    writeVarint(out, multiplicities[v]);
+                    writeVarint(out, variants[v].length);
+                    for (int label : variants[v]) {
+                        writeVarint(out, label);
+                    }
+                }
+            }
+            Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write variants to " + file, e);
+        }
+    }
+
+    /**
+     * @return the content hash the variants are keyed by, null if they have been extracted without hash
+     */
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    /**
+     * @return the label table, a variant refers to its labels by their index in this table
+     */
+    public String[] getLabels() {
+        return labels.clone();
+    }
+
+    public int getNumberOfVariants() {
+        return variants.length;
+    }
+
+    /**
+     * @param variant index of a variant
+     * @return the label indices of the variant
+     */
+    public int[] getVariant(int variant) {
+        return variants[variant].clone();
+    }
+
+    /**
+     * @param variant index of a variant
+     * @return the number of traces of the variant
+     */
+    public int getMultiplicity(int variant) {
+        return multiplicities[variant];
+    }
+
+    public long getNumberOfTraces() {
+        long traces = 0;
+        for (int multiplicity : multiplicities) {
+            traces += multiplicity;
+        }
+        return traces;
+    }
+
+    /**
+     * @return the variants as sequences of activity labels
+     */
+    public HashSet<ArrayList<String>> toLabelSequences() {
+        HashSet<ArrayList<String>> labelSequences = new HashSet<>();
+        for (int[] variant : variants) {
+            ArrayList<String> labelSequence = new ArrayList<>(variant.length);
+            for (int label : variant) {
+                labelSequence.add(labels[label]);
+            }
+            labelSequences.add(labelSequence);
+        }
+        return labelSequences;
+    }
+
+    private static void writeVarint(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarint(MappedByteBuffer buffer) {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        writeVarint(out, bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Reads the length of a string or array. Every element takes at least one byte, so a length that exceeds the
+     * remaining bytes can only come from a truncated or corrupt file.
+     */
+    private static int readLength(MappedByteBuffer buffer, Path file) {
+        int length = readVarint(buffer);
+        if (length < 0 || length > buffer.remaining()) {
+            throw corrupt(file);
+        }
+        return length;
+    }
+
+    private static IllegalArgumentException corrupt(Path file) {
+        return new IllegalArgumentException(file + " is truncated or corrupt");
+    }
+
+    private static String readString(MappedByteBuffer buffer, Path file) {
+        byte[] bytes = new byte[readLength(buffer, file)];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : bytes) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+}
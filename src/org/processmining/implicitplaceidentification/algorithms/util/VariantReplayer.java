@@ -0,0 +1,93 @@
+package org.processmining.implicitplaceidentification.algorithms.util;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Replays variants, given as sequences of transition indices, on an {@link IndexedPetrinet} and records the marking
+ * histories in a {@link MarkingHistoryStore}.
+ */
+public class VariantReplayer {
+
+    /**
+     * Replays the variants and returns the marking histories of the ones that fit the net.
+     * The variants are replayed twice: the first pass filters out variants that do not fit the net and determines
+     * the number of markings and the largest number of tokens, so the second pass can write the markings directly
+     * into a compact, place-major store (on the heap or memory-mapped) without any intermediate copies.
+     *
+     * @param net            the net
+     * @param m0             the initial marking vector
+     * @param variants       the variants as sequences of transition indices
+     * @param spillDirectory directory for a memory-mapped store, or null to keep the histories on the heap
+     * @return the marking histories of all fitting variants, in the order in which they were given
+     */
+    public static MarkingHistoryStore replay(IndexedPetrinet net, int[] m0, List<int[]> variants,
+                                             Path spillDirectory) {
+        List<int[]> fittingVariants = new ArrayList<>();
+        int maxNumberOfTokens = Arrays.stream(m0).max().orElse(0);
+        for (int[] variant : variants) {
+            int maxNumberOfTokensOfVariant = replayForMaxNumberOfTokens(net, m0, variant);
+            if (maxNumberOfTokensOfVariant >= 0) {
+                fittingVariants.add(variant);
+                maxNumberOfTokens = Math.max(maxNumberOfTokens, maxNumberOfTokensOfVariant);
+            } else {
+                System.out.println("Variant does not match Petri net: " + Arrays.stream(variant)
+                        .mapToObj(t -> net.getTransitionToIndexMap().inverse().get(t).getLabel())
+                        .collect(Collectors.toList()));
+            }
+        }
+
+        int[] variantLengths = fittingVariants.stream().mapToInt(v -> v.length + 1).toArray();
+        MarkingHistoryStore histories;
+        if (spillDirectory == null) {
+            histories = new ArrayMarkingHistoryStore(net.getNumberOfPlaces(), variantLengths, maxNumberOfTokens);
+        } else {
+            histories = new MappedMarkingHistoryStore(spillDirectory, net.getNumberOfPlaces(), variantLengths,
+                    maxNumberOfTokens, MappedMarkingHistoryStore.DEFAULT_BLOCK_BYTES);
+        }
+        for (int v = 0; v < fittingVariants.size(); v++) {
+            int[] mx = m0.clone();
+            int column = histories.getVariantStart(v);
+            // add initial marking to marking sequence first:
+            histories.setColumn(column, mx);
+            for (int t : fittingVariants.get(v)) {
+                // fire transition
+                net.fire(mx, t);
+                histories.setColumn(++column, mx);
+            }
+        }
+        return histories;
+    }
+
+    /**
+     * @param net     the net
+     * @param m0      the initial marking vector
+     * @param variant a variant as sequence of transition indices
+     * @return true if every transition of the variant is enabled when it is fired
+     */
+    public static boolean fits(IndexedPetrinet net, int[] m0, int[] variant) {
+        return replayForMaxNumberOfTokens(net, m0, variant) >= 0;
+    }
+
+    /**
+     * @return the largest number of tokens in a place during the replay, or -1 if the variant does not fit the net
+     */
+    private static int replayForMaxNumberOfTokens(IndexedPetrinet net, int[] m0, int[] variant) {
+        int[] mx = m0.clone();
+        int maxNumberOfTokens = 0;
+        for (int t : variant) {
+            // check whether transition is enabled
+            if (!net.isEnabled(mx, t)) {
+                return -1;
+            }
+            net.fire(mx, t);
+            for (int tokens : mx) {
+                maxNumberOfTokens = Math.max(maxNumberOfTokens, tokens);
+            }
+        }
+        return maxNumberOfTokens;
+    }
+}
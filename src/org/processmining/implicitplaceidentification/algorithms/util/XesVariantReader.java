@@ -0,0 +1,158 @@
+package org.processmining.implicitplaceidentification.algorithms.util;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.*;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads the variants of an XES file (plain or gzipped) with a streaming StAX parser, without building an XLog.
+ * Only the concept:name attribute of the events is kept: labels are interned while reading and every trace is
+ * encoded as a sequence of label indices, so memory only grows with the number of distinct variants, not with the
+ * size of the log.
+ */
+public class XesVariantReader {
+    private static final String CONCEPT_NAME = "concept:name";
+
+    private final List<String> labelTable = new ArrayList<>();
+    private final HashMap<String, Integer> labelIndices = new HashMap<>();
+    private final LinkedHashMap<List<Integer>, Integer> variantFrequencies = new LinkedHashMap<>();
+
+    private XesVariantReader() {
+    }
+
+    /**
+     * Reads the variants of an XES file. Gzipped files are recognized by their content.
+     *
+     * @param xesFile an .xes or .xes.gz file
+     * @return the variants of the log, keyed by the hash of the file as in
+     * {@link VariantCache#loadOrExtract(Path, Path, java.util.function.Function)}
+     */
+    public static VariantCache read(Path xesFile) {
+        MessageDigest digest = VariantCache.sha256();
+        try (DigestInputStream file = new DigestInputStream(Files.newInputStream(xesFile), digest);
+             InputStream in = decompressIfNeeded(file)) {
+            XesVariantReader reader = new XesVariantReader();
+            // the parser may close its input at the end of the document, the file is closed by this method
+            reader.parse(new FilterInputStream(in) {
+                @Override
+                public void close() {
+                }
+            });
+            // consume the bytes after the end of the XML, so the hash covers the whole file
+            byte[] buffer = new byte[1 << 16];
+            while (file.read(buffer) != -1) {
+                // the digest is updated while reading
+            }
+            return reader.toVariantCache(VariantCache.toHex(digest.digest()));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read " + xesFile, e);
+        } catch (XMLStreamException e) {
+            throw new IllegalArgumentException(xesFile + " is not a valid XES file", e);
+        }
+    }
+
+    private static InputStream decompressIfNeeded(InputStream in) throws IOException {
+        BufferedInputStream buffered = new BufferedInputStream(in, 1 << 16);
+        buffered.mark(2);
+        int first = buffered.read();
+        int second = buffered.read();
+        buffered.reset();
+        if (first == (GZIPInputStream.GZIP_MAGIC & 0xFF) && second == (GZIPInputStream.GZIP_MAGIC >>> 8)) {
+            return new GZIPInputStream(buffered, 1 << 16);
+        }
+        return buffered;
+    }
+
+    private void parse(InputStream in) throws XMLStreamException {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        // XES files do not need external entities, and resolving them would be unsafe
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        XMLStreamReader xml = factory.createXMLStreamReader(in);
+
+        // default label of events without a concept:name attribute, declared by <global scope="event">
+        String defaultLabel = null;
+        boolean inEventGlobals = false;
+        List<Integer> trace = null;
+        String eventLabel = null;
+        // depth of the current element below the innermost trace, event or global element
+        int depth = 0;
+        boolean inEvent = false;
+
+        try {
+            while (xml.hasNext()) {
+                int type = xml.next();
+                if (type == XMLStreamConstants.START_ELEMENT) {
+                    String element = xml.getLocalName();
+                    if (depth == 0 && "trace".equals(element)) {
+                        trace = new ArrayList<>();
+                    } else if (depth == 0 && "global".equals(element)) {
+                        inEventGlobals = "event".equals(xml.getAttributeValue(null, "scope"));
+                    } else if (depth == 0 && trace != null && "event".equals(element)) {
+                        inEvent = true;
+                        eventLabel = defaultLabel;
+                    } else if (depth == 1 && (inEvent || inEventGlobals)
+                            && CONCEPT_NAME.equals(xml.getAttributeValue(null, "key"))) {
+                        // only direct attributes of the event, nested attributes belong to other attributes
+                        if (inEvent) {
+                            eventLabel = xml.getAttributeValue(null, "value");
+                        } else {
+                            defaultLabel = xml.getAttributeValue(null, "value");
+                        }
+                    }
+                    if (inEvent || inEventGlobals) {
+                        depth++;
+                    }
+                } else if (type == XMLStreamConstants.END_ELEMENT) {
+                    if (inEvent || inEventGlobals) {
+                        depth--;
+                    }
+                    if (depth > 0) {
+                        continue;
+                    }
+                    String element = xml.getLocalName();
+                    if (inEvent && "event".equals(element)) {
+                        inEvent = false;
+                        if (eventLabel != null) {
+                            trace.add(intern(eventLabel));
+                        }
+                    } else if (inEventGlobals && "global".equals(element)) {
+                        inEventGlobals = false;
+                    } else if (trace != null && "trace".equals(element)) {
+                        variantFrequencies.merge(trace, 1, Integer::sum);
+                        trace = null;
+                    }
+                }
+            }
+        } finally {
+            xml.close();
+        }
+    }
+
+    private int intern(String label) {
+        return labelIndices.computeIfAbsent(label, l -> {
+            labelTable.add(l);
+            return labelTable.size() - 1;
+        });
+    }
+
+    private VariantCache toVariantCache(String contentHash) {
+        int[][] variants = new int[variantFrequencies.size()][];
+        int[] multiplicities = new int[variantFrequencies.size()];
+        int v = 0;
+        for (Map.Entry<List<Integer>, Integer> entry : variantFrequencies.entrySet()) {
+            variants[v] = entry.getKey().stream().mapToInt(Integer::intValue).toArray();
+            multiplicities[v] = entry.getValue();
+            v++;
+        }
+        return new VariantCache(contentHash, labelTable.toArray(new String[0]), variants, multiplicities);
+    }
+}
@@ -0,0 +1,283 @@
+package org.processmining.tests.implicitplaceidentification;
+import junit.framework.TestCase;
+
+import org.junit.Test;
+import org.processmining.implicitplaceidentification.algorithms.PetrinetLanguageGenerator;
+import org.processmining.implicitplaceidentification.algorithms.util.IndexedPetrinet;
+import org.processmining.implicitplaceidentification.algorithms.util.LanguageAutomaton;
+import org.processmining.models.graphbased.directed.petrinet.Petrinet;
+import org.processmining.models.graphbased.directed.petrinet.PetrinetEdge;
+import org.processmining.models.graphbased.directed.petrinet.PetrinetNode;
+import org.processmining.models.graphbased.directed.petrinet.elements.Place;
+import org.processmining.models.graphbased.directed.petrinet.elements.Transition;
+import org.processmining.models.graphbased.directed.petrinet.impl.PetrinetFactory;
+import org.processmining.models.semantics.petrinet.Marking;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Compares the searches of the {@link PetrinetLanguageGenerator} with straightforward searches on random nets, which
+ * contain loops, concurrency and places with more than one token.
+ */
+public class PetrinetLanguageGeneratorTest extends TestCase {
+
+  private static final int NUMBER_OF_NETS = 300;
+
+  @Test
+  public void testGenerateMatchesRecursiveSearch() {
+    Random random = new Random(37);
+    for (int i = 0; i < NUMBER_OF_NETS; i++) {
+      Marking m0 = new Marking();
+      Petrinet net = randomNet(random, m0);
+      int maxTraceLength = 3 + random.nextInt(6);
+      int loopExecutionLimit = 1 + random.nextInt(2);
+      int markingBound = 2 + random.nextInt(2);
+
+      Set<Stack<String>> expected = new HashSet<>();
+      generateRecursively(net, m0, new ArrayList<>(), new Stack<>(), maxTraceLength, loopExecutionLimit,
+          markingBound, expected);
+      assertEquals("net " + i, expected,
+          new PetrinetLanguageGenerator().generate(net, m0, maxTraceLength, loopExecutionLimit, markingBound));
+    }
+  }
+
+  @Test
+  public void testAutomatonMatchesGenerate() {
+    Random random = new Random(40);
+    for (int i = 0; i < NUMBER_OF_NETS; i++) {
+      Marking m0 = new Marking();
+      Petrinet net = randomNet(random, m0);
+      assertSameLanguage("net " + i, net, m0, 3 + random.nextInt(6), 1 + random.nextInt(2), 2 + random.nextInt(2));
+    }
+
+    // three concurrent branches with a loop each, so markings on cycles are reached through many interleavings
+    Petrinet net = PetrinetFactory.newPetrinet("concurrent loops");
+    Marking m0 = new Marking();
+    Place start = net.addPlace("start");
+    Place end = net.addPlace("end");
+    m0.add(start, 1);
+    Transition split = net.addTransition("split");
+    Transition join = net.addTransition("join");
+    net.addArc(start, split);
+    net.addArc(join, end);
+    for (int b = 0; b < 3; b++) {
+      Place before = net.addPlace("before" + b);
+      Place inLoop = net.addPlace("in loop" + b);
+      Place after = net.addPlace("after" + b);
+      Transition enter = net.addTransition("enter" + b);
+      Transition redo = net.addTransition("redo" + b);
+      Transition leave = net.addTransition("leave" + b);
+      net.addArc(split, before);
+      net.addArc(before, enter);
+      net.addArc(enter, inLoop);
+      net.addArc(inLoop, redo);
+      net.addArc(redo, before);
+      net.addArc(inLoop, leave);
+      net.addArc(leave, after);
+      net.addArc(after, join);
+    }
+    assertSameLanguage("concurrent loops", net, m0, 9, 2, 3);
+  }
+
+  private static void assertSameLanguage(String message, Petrinet net, Marking m0, int maxTraceLength,
+      int loopExecutionLimit, int markingBound) {
+    PetrinetLanguageGenerator generator = new PetrinetLanguageGenerator();
+    LanguageAutomaton expected = new LanguageAutomaton();
+    for (Stack<String> trace : generator.generate(net, m0, maxTraceLength, loopExecutionLimit, markingBound)) {
+      int[] word = trace.stream().mapToInt(expected::intern).toArray();
+      expected.add(word, word.length);
+    }
+    LanguageAutomaton language = generator.generateAutomaton(net, m0, maxTraceLength, loopExecutionLimit,
+        markingBound);
+    assertEquals(message, expected.getNumberOfWords(), language.getNumberOfWords());
+    assertTrue(message, language.isEquivalentTo(expected));
+  }
+
+  @Test
+  public void testPartialOrderReductionFindsShortestDivergingTraces() {
+    Random random = new Random(41);
+    PetrinetLanguageGenerator generator = new PetrinetLanguageGenerator();
+    for (int i = 0; i < NUMBER_OF_NETS; i++) {
+      Marking marking = new Marking();
+      IndexedPetrinet net = new IndexedPetrinet(randomNet(random, marking));
+      int[] m0 = net.toMarkingVector(marking);
+      int maxTraceLength = 3 + random.nextInt(8);
+      int markingBound = 2 + random.nextInt(2);
+      for (int place = 0; place < net.getNumberOfPlaces(); place++) {
+        String message = "net " + i + ", place " + place;
+        int[] trace = generator.findDivergingTraceWithPartialOrderReduction(net, m0, place, maxTraceLength,
+            markingBound);
+        int shortestLength = findShortestDivergingTraceLength(net, m0, place, maxTraceLength, markingBound);
+        if (shortestLength < 0) {
+          assertNull(message, trace);
+          continue;
+        }
+        assertNotNull(message, trace);
+        assertEquals(message, shortestLength, trace.length);
+        assertTrue(message, isDivergingTrace(net, m0, place, markingBound, trace));
+      }
+    }
+  }
+
+  /**
+   * Searches the markings of the net breadth-first without any reduction.
+   *
+   * @return the length of the shortest trace that diverges when the place is removed, or -1 if there is none within
+   * the maximum length
+   */
+  private static int findShortestDivergingTraceLength(IndexedPetrinet net, int[] m0, int place, int maxTraceLength,
+      int markingBound) {
+    Set<List<Integer>> reached = new HashSet<>();
+    List<int[]> level = Collections.singletonList(m0);
+    for (int depth = 0; depth <= maxTraceLength; depth++) {
+      List<int[]> nextLevel = new ArrayList<>();
+      for (int[] m : level) {
+        for (int t = 0; t < net.getNumberOfTransitions(); t++) {
+          if (!net.isWithinBound(m, t, markingBound, place) || !isEnabledWithoutPlace(net, m, t, place)) {
+            continue;
+          }
+          if (!net.isEnabled(m, t)) {
+            return depth + 1;
+          }
+          int[] next = m.clone();
+          net.fire(next, t);
+          if (reached.add(Arrays.stream(next).boxed().collect(Collectors.toList()))) {
+            nextLevel.add(next);
+          }
+        }
+      }
+      level = nextLevel;
+    }
+    return -1;
+  }
+
+  private static boolean isDivergingTrace(IndexedPetrinet net, int[] m0, int place, int markingBound, int[] trace) {
+    int[] m = m0.clone();
+    for (int i = 0; i < trace.length - 1; i++) {
+      if (!net.isEnabled(m, trace[i]) || !net.isWithinBound(m, trace[i], markingBound, place)) {
+        return false;
+      }
+      net.fire(m, trace[i]);
+    }
+    int last = trace[trace.length - 1];
+    return !net.isEnabled(m, last) && isEnabledWithoutPlace(net, m, last, place)
+        && net.isWithinBound(m, last, markingBound, place);
+  }
+
+  private static boolean isEnabledWithoutPlace(IndexedPetrinet net, int[] m, int t, int place) {
+    int[] inputs = net.getInputPlaces(t);
+    int[] inputWeights = net.getInputWeights(t);
+    for (int i = 0; i < inputs.length; i++) {
+      if (inputs[i] != place && m[inputs[i]] < inputWeights[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * The search of the generator before it used marking vectors: transitions are fired on markings, and a transition
+   * may fire in a marking as often as the loop limit on the current path.
+   */
+  private static void generateRecursively(Petrinet net, Marking m, List<Marking> markingsOnPath, Stack<String> trace,
+      int maxTraceLength, int loopExecutionLimit, int markingBound, Set<Stack<String>> language) {
+    boolean extended = false;
+    for (Transition t : net.getTransitions()) {
+      if (trace.size() > maxTraceLength || !isEnabled(net, m, t, markingBound)
+          || timesFired(m, t, markingsOnPath, trace) >= loopExecutionLimit) {
+        continue;
+      }
+      extended = true;
+      markingsOnPath.add(m);
+      trace.push(t.getLabel());
+      generateRecursively(net, fire(net, m, t), markingsOnPath, trace, maxTraceLength, loopExecutionLimit,
+          markingBound, language);
+      trace.pop();
+      markingsOnPath.remove(markingsOnPath.size() - 1);
+    }
+    if (!extended && !trace.isEmpty()) {
+      language.add((Stack<String>) trace.clone());
+    }
+  }
+
+  private static boolean isEnabled(Petrinet net, Marking m, Transition t, int markingBound) {
+    Marking consumed = inputs(net, t);
+    for (Place p : consumed.baseSet()) {
+      if (m.occurrences(p) < consumed.occurrences(p)) {
+        return false;
+      }
+    }
+    for (PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode> e : net.getOutEdges(t)) {
+      Place p = (Place) e.getTarget();
+      if (m.occurrences(p) - consumed.occurrences(p) >= markingBound) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static int timesFired(Marking m, Transition t, List<Marking> markingsOnPath, Stack<String> trace) {
+    int times = 0;
+    for (int i = 0; i < trace.size(); i++) {
+      if (markingsOnPath.get(i).equals(m) && trace.get(i).equals(t.getLabel())) {
+        times++;
+      }
+    }
+    return times;
+  }
+
+  private static Marking fire(Petrinet net, Marking m, Transition t) {
+    Marking next = new Marking(m);
+    net.getOutEdges(t).forEach(e -> next.add((Place) e.getTarget(), 1));
+    next.minus(inputs(net, t));
+    return next;
+  }
+
+  private static Marking inputs(Petrinet net, Transition t) {
+    Marking inputs = new Marking();
+    net.getInEdges(t).forEach(e -> inputs.add((Place) e.getSource(), 1));
+    return inputs;
+  }
+
+  /**
+   * @param m0 receives the initial marking, one token in p0 and sometimes two in p1
+   * @return a net with 3 to 6 places and transitions with one or two input and output places each
+   */
+  private static Petrinet randomNet(Random random, Marking m0) {
+    Petrinet net = PetrinetFactory.newPetrinet("random net");
+    Place[] places = new Place[3 + random.nextInt(4)];
+    for (int p = 0; p < places.length; p++) {
+      places[p] = net.addPlace("p" + p);
+    }
+    m0.add(places[0], 1);
+    if (random.nextBoolean()) {
+      m0.add(places[1], 2);
+    }
+    int numberOfTransitions = 3 + random.nextInt(4);
+    for (int t = 0; t < numberOfTransitions; t++) {
+      Transition transition = net.addTransition("t" + t);
+      for (int p : randomPlaces(random, places.length)) {
+        net.addArc(places[p], transition);
+      }
+      for (int p : randomPlaces(random, places.length)) {
+        net.addArc(transition, places[p]);
+      }
+    }
+    return net;
+  }
+
+  private static Set<Integer> randomPlaces(Random random, int numberOfPlaces) {
+    Set<Integer> places = new TreeSet<>();
+    int size = 1 + random.nextInt(2);
+    for (int i = 0; i < size; i++) {
+      places.add(random.nextInt(numberOfPlaces));
+    }
+    return places;
+  }
+
+  public static void main(String[] args) {
+    junit.textui.TestRunner.run(PetrinetLanguageGeneratorTest.class);
+  }
+
+}